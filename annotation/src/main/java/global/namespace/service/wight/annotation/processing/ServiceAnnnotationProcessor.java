@@ -28,6 +28,10 @@ public abstract class ServiceAnnnotationProcessor extends AbstractProcessor {
         return SourceVersion.latest();
     }
 
+    final void debug(CharSequence msg) {
+        getMessager().printMessage(NOTE, msg);
+    }
+
     final void debug(CharSequence msg, Element e) {
         getMessager().printMessage(NOTE, msg, e);
     }
@@ -8,40 +8,103 @@ import global.namespace.service.wight.annotation.ServiceImplementation;
 import global.namespace.service.wight.annotation.ServiceInterface;
 import lombok.val;
 
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.SimpleAnnotationValueVisitor8;
-import javax.lang.model.util.SimpleTypeVisitor8;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
-import static java.util.Comparator.comparing;
+import static java.util.Optional.empty;
+import static java.util.Optional.ofNullable;
 import static javax.lang.model.element.ElementKind.CLASS;
 import static javax.lang.model.element.ElementKind.CONSTRUCTOR;
+import static javax.lang.model.element.ElementKind.METHOD;
 import static javax.lang.model.element.Modifier.*;
+import static javax.lang.model.type.TypeKind.DECLARED;
 import static javax.tools.StandardLocation.CLASS_OUTPUT;
 
 /**
  * Processes the {@link ServiceImplementation} annotation to register the annotated type in a service provider
  * configuration file in {@code META-INF/services}.
+ * In addition, the binary name and the {@linkplain ServiceImplementation#priority() priority} of each registered type
+ * get recorded in an index file in {@code META-INF/service-wight}, so that the {@code ServiceLocator} can sort the
+ * located service implementations without loading their classes to inspect their annotations.
+ * <p>
+ * Finally, for each package which contains registered types, a factory class gets generated which instantiates these
+ * types with plain constructor calls, so that the {@code ServiceLocator} doesn't need to use reflection.
+ * The binary name of this factory class gets recorded in the index file, too.
+ * <p>
+ * When processing is over, the reflection and resource configuration files for the GraalVM {@code native-image} tool
+ * get generated in {@code META-INF/native-image/<groupId>/<artifactId>}, so that the located service implementations
+ * work in native executables without any manual configuration.
+ * The path components can be set with the processor options {@code -Aservice.wight.groupId=...} and
+ * {@code -Aservice.wight.artifactId=...}.
+ * <p>
+ * This processor is safe for multiple rounds and incremental compilation:
+ * The registrations of all rounds get accumulated and all resource files get written once when processing is over.
+ * Before that, the existing service provider configuration files and index files in the class output get merged with
+ * the new registrations, so that the registrations of classes which have not been recompiled are retained.
+ * Registrations of classes which no longer exist or are no longer annotated get dropped.
+ * The service interfaces listed in the existing native image configuration get merged the same way, so that an
+ * incremental build which recompiles only some implementations doesn't drop the other service interfaces from it.
+ * For Gradle, this processor is declared as an aggregating incremental annotation processor.
  *
  * @author Christian Schlichtherle
  */
 @SupportedAnnotationTypes("global.namespace.service.wight.annotation.ServiceImplementation")
+@SupportedOptions({
+        ServiceImplementationProcessor.GROUP_ID_OPTION,
+        ServiceImplementationProcessor.ARTIFACT_ID_OPTION
+})
 public final class ServiceImplementationProcessor extends ServiceAnnnotationProcessor {
 
-    private static final Comparator<TypeElement> TYPE_ELEMENT_COMPARATOR =
-            comparing(o -> o.getQualifiedName().toString());
+    static final String GROUP_ID_OPTION = "service.wight.groupId";
+    static final String ARTIFACT_ID_OPTION = "service.wight.artifactId";
+
+    private static final String SERVICES = "META-INF/services/";
+    private static final Pattern RESOURCE_PATTERN = Pattern.compile("\"pattern\": \"\\\\\\\\Q(.+?)\\\\\\\\E\"");
+
+    private Registry registry;
+
+    // The following fields are valid for the current round only:
+    private final Map<TypeElement, Set<TypeElement>> serviceInterfaces = new HashMap<>();
+    private final Map<TypeElement, Constructor> constructors = new HashMap<>();
+    private TypeElement serviceImplementation;
+    private ExecutableElement serviceImplementationValue;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        registry = new Registry();
+    }
 
     @Override
     public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
-        val registry = new Registry();
+        if (roundEnv.processingOver()) {
+            registry.merge();
+            registry.persist();
+            return true;
+        }
+        serviceImplementation = processingEnv.getElementUtils().getTypeElement(ServiceImplementation.class.getName());
+        serviceImplementationValue = null;
+        for (val elem : serviceImplementation.getEnclosedElements()) {
+            if (elem.getKind() == METHOD && "value".contentEquals(elem.getSimpleName())) {
+                serviceImplementationValue = (ExecutableElement) elem;
+            }
+        }
         for (val elem : roundEnv.getElementsAnnotatedWith(ServiceImplementation.class)) {
             if (elem instanceof TypeElement) {
                 val impl = (TypeElement) elem;
@@ -56,10 +119,54 @@ public final class ServiceImplementationProcessor extends ServiceAnnnotationProc
                 warning("Expected a type element here.", elem);
             }
         }
-        registry.persist();
+        registry.generateFactories();
+        serviceInterfaces.clear();
+        constructors.clear();
         return true;
     }
 
+    private void persistNativeImageConfiguration(final Set<String> reflectedClasses, final Set<String> resources) {
+        if (reflectedClasses.isEmpty()) {
+            return;
+        }
+        val path = nativeImagePath();
+        persistJson(path + "reflect-config.json", reflectedClasses, "[\n", "\n]\n",
+                name -> "  {\n" +
+                        "    \"name\": \"" + name + "\",\n" +
+                        "    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]\n" +
+                        "  }");
+        persistJson(path + "resource-config.json", resources, "{\n  \"resources\": {\n    \"includes\": [\n",
+                "\n    ]\n  }\n}\n",
+                resource -> "      {\"pattern\": \"\\\\Q" + resource + "\\\\E\"}");
+    }
+
+    private String nativeImagePath() {
+        val options = processingEnv.getOptions();
+        return "META-INF/native-image/" +
+                options.getOrDefault(GROUP_ID_OPTION, "global.namespace.service-wight") + "/" +
+                options.getOrDefault(ARTIFACT_ID_OPTION, "services") + "/";
+    }
+
+    private void persistJson(final String path,
+                             final Set<String> entries,
+                             final String prefix,
+                             final String suffix,
+                             final Function<String, String> entry) {
+        try {
+            val fo = processingEnv.getFiler().createResource(CLASS_OUTPUT, "", path);
+            try (val w = fo.openWriter()) {
+                w.append(prefix);
+                val joiner = new StringJoiner(",\n");
+                for (val e : entries) {
+                    joiner.add(entry.apply(e));
+                }
+                w.append(joiner.toString()).append(suffix);
+            }
+        } catch (IOException e) {
+            error(String.format(Locale.ENGLISH, "Failed to generate native image configuration at: %s: %s", path, e.getMessage()));
+        }
+    }
+
     private boolean valid(final TypeElement impl) {
         {
             val modifiers = impl.getModifiers();
@@ -76,45 +183,58 @@ public final class ServiceImplementationProcessor extends ServiceAnnnotationProc
                 }
             }
         }
-        val constructors = new LinkedList<ExecutableElement>();
-        for (val elem : impl.getEnclosedElements()) {
-            if (elem.getKind() == CONSTRUCTOR) {
-                constructors.add((ExecutableElement) elem);
-            }
-        }
-        if (!constructors.isEmpty() && !valid(constructors)) {
+        if (!constructor(impl).valid) {
             error("No public constructor with zero parameters available.", impl);
             return false;
         }
         return true;
     }
 
-    private boolean valid(final Collection<? extends ExecutableElement> ctors) {
-        for (val ctor : ctors) {
-            if (valid(ctor)) {
-                return true;
+    /**
+     * Returns the properties of the public constructor with zero parameters of the given element.
+     * The result is memoized for the current round.
+     */
+    private Constructor constructor(final TypeElement impl) {
+        Constructor ctor = constructors.get(impl);
+        if (null == ctor) {
+            boolean any = false, valid = false, throwing = false;
+            for (val elem : impl.getEnclosedElements()) {
+                if (elem.getKind() == CONSTRUCTOR) {
+                    any = true;
+                    val executable = (ExecutableElement) elem;
+                    if (executable.getModifiers().contains(PUBLIC) && executable.getParameters().isEmpty()) {
+                        valid = true;
+                        throwing = !executable.getThrownTypes().isEmpty();
+                    }
+                }
             }
+            constructors.put(impl, ctor = new Constructor(valid || !any, throwing));
         }
-        return false;
+        return ctor;
     }
 
-    private boolean valid(ExecutableElement ctor) {
-        return ctor.getModifiers().contains(PUBLIC) && ctor.getParameters().isEmpty();
+    private static final class Constructor {
+
+        /** Whether or not the element can be instantiated with a public constructor with zero parameters. */
+        final boolean valid;
+
+        /** Whether or not this constructor declares any exceptions. */
+        final boolean throwing;
+
+        Constructor(final boolean valid, final boolean throwing) {
+            this.valid = valid;
+            this.throwing = throwing;
+        }
     }
 
     private boolean processAnnotations(final TypeElement impl, final Registry registry) {
         val implType = (DeclaredType) impl.asType();
         for (val mirror : processingEnv.getElementUtils().getAllAnnotationMirrors(impl)) {
-            if (!ServiceImplementation.class.getName().equals(
-                    ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString())) {
+            if (!serviceImplementation.equals(mirror.getAnnotationType().asElement())) {
                 continue;
             }
-            val values = mirror.getElementValues();
-            for (val entry : values.entrySet()) {
-                val element = entry.getKey();
-                if (!"value".equals(element.getSimpleName().toString())) {
-                    continue;
-                }
+            val annotationValue = mirror.getElementValues().get(serviceImplementationValue);
+            if (null != annotationValue) {
 
                 class Visitor extends SimpleAnnotationValueVisitor8<Boolean, Void> {
 
@@ -142,76 +262,291 @@ public final class ServiceImplementationProcessor extends ServiceAnnnotationProc
                     }
                 }
 
-                return entry.getValue().accept(new Visitor(), null);
+                return annotationValue.accept(new Visitor(), null);
             }
         }
         return false;
     }
 
     private boolean processTypeHierarchy(final TypeElement impl, final Registry registry) {
+        val ifaces = serviceInterfaces(impl);
+        for (val iface : ifaces) {
+            registry.add(impl, iface);
+        }
+        return !ifaces.isEmpty();
+    }
 
-        class Visitor extends SimpleTypeVisitor8<Boolean, Void> {
-
-            private Visitor() {
-                super(false);
+    /**
+     * Returns the service interfaces in the type hierarchy of the given element, including the element itself.
+     * The result is memoized for the current round, so that type hierarchies which are shared by many service
+     * implementations get visited only once.
+     */
+    private Set<TypeElement> serviceInterfaces(final TypeElement elem) {
+        Set<TypeElement> ifaces = serviceInterfaces.get(elem);
+        if (null == ifaces) {
+            ifaces = new LinkedHashSet<>();
+            if (null != elem.getAnnotation(ServiceInterface.class)) {
+                ifaces.add(elem);
             }
-
-            @Override
-            public Boolean visitDeclared(final DeclaredType type, final Void p) {
-                boolean found = false;
-                final TypeElement elem = (TypeElement) type.asElement();
-                if (null != elem.getAnnotation(ServiceInterface.class)) {
-                    found = true;
-                    registry.add(impl, elem);
-                }
-                for (final TypeMirror m : elem.getInterfaces()) {
-                    found |= m.accept(this, p);
-                }
-                return elem.getSuperclass().accept(this, p) || found;
+            for (val type : elem.getInterfaces()) {
+                ifaces.addAll(serviceInterfaces(type));
             }
+            ifaces.addAll(serviceInterfaces(elem.getSuperclass()));
+            serviceInterfaces.put(elem, ifaces);
         }
+        return ifaces;
+    }
 
-        return impl.asType().accept(new Visitor(), null);
+    private Set<TypeElement> serviceInterfaces(final TypeMirror type) {
+        return type.getKind() == DECLARED
+                ? serviceInterfaces((TypeElement) ((DeclaredType) type).asElement())
+                : Collections.emptySet();
     }
 
+    /**
+     * Accumulates the registrations of all rounds.
+     * Because elements must not be retained across rounds, all registrations are kept by binary name.
+     */
     private final class Registry {
 
         final Elements elements = processingEnv.getElementUtils();
-        final Map<TypeElement, Collection<TypeElement>> services = new HashMap<>();
+
+        /** Maps the binary name of each service interface to the binary names of its implementations. */
+        final Map<String, SortedSet<String>> services = new TreeMap<>();
+
+        /** Maps the binary name of each implementation to its priority. */
+        final Map<String, Integer> priorities = new HashMap<>();
+
+        /** Maps the binary name of each implementation to the binary name of its generated factory class. */
+        final Map<String, String> factories = new HashMap<>();
+
+        /** The implementations which have been registered in the current round. */
+        final Map<String, TypeElement> pending = new TreeMap<>();
 
         void add(final TypeElement impl, final TypeElement iface) {
-            Collection<TypeElement> coll = services.get(iface);
-            if (null == coll) {
-                coll = new TreeSet<>(TYPE_ELEMENT_COMPARATOR);
+            val name = name(impl).toString();
+            services.computeIfAbsent(name(iface).toString(), k -> new TreeSet<>()).add(name);
+            priorities.put(name, priority(impl));
+            pending.put(name, impl);
+        }
+
+        /**
+         * Generates a factory class for each package which contains types registered in the current round.
+         * Types which are nested in a private class are not accessible from their package and types whose
+         * constructor declares any exceptions cannot be referenced as a supplier, so they don't get a factory and the
+         * {@code ServiceLocator} falls back to reflection for them.
+         */
+        void generateFactories() {
+            final Map<String, List<TypeElement>> packages = new TreeMap<>();
+            for (val impl : pending.values()) {
+                if (factorable(impl)) {
+                    packages.computeIfAbsent(elements.getPackageOf(impl).getQualifiedName().toString(),
+                            pkg -> new ArrayList<>()).add(impl);
+                }
+            }
+            pending.clear();
+            for (val entry : packages.entrySet()) {
+                val pkg = entry.getKey();
+                val impls = entry.getValue();
+                val joiner = new StringJoiner(",");
+                for (val impl : impls) {
+                    joiner.add(name(impl));
+                }
+                val simpleName = "ServiceFactories_" + Integer.toHexString(joiner.toString().hashCode());
+                val name = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+                try {
+                    val fo = processingEnv.getFiler().createSourceFile(name, impls.toArray(new Element[0]));
+                    try (val w = fo.openWriter()) {
+                        w.append("// Generated by ").append(ServiceImplementationProcessor.class.getName())
+                                .append(" - do not edit!\n");
+                        if (!pkg.isEmpty()) {
+                            w.append("package ").append(pkg).append(";\n");
+                        }
+                        w.append("\n");
+                        w.append("public final class ").append(simpleName)
+                                .append(" implements java.util.function.Function<String, java.util.function.Supplier<?>> {\n\n");
+                        w.append("    @Override\n");
+                        w.append("    public java.util.function.Supplier<?> apply(final String name) {\n");
+                        w.append("        switch (name) {\n");
+                        for (val impl : impls) {
+                            w.append("            case \"").append(name(impl)).append("\": return ")
+                                    .append(impl.getQualifiedName()).append("::new;\n");
+                        }
+                        w.append("            default: return null;\n");
+                        w.append("        }\n");
+                        w.append("    }\n");
+                        w.append("}\n");
+                    }
+                    for (val impl : impls) {
+                        factories.put(name(impl).toString(), name);
+                    }
+                } catch (IOException e) {
+                    warning(String.format(Locale.ENGLISH, "Failed to generate factory class %s: %s", name, e.getMessage()), impls.get(0));
+                }
+            }
+        }
+
+        private boolean factorable(final TypeElement impl) {
+            for (Element elem = impl; elem instanceof TypeElement; elem = elem.getEnclosingElement()) {
+                if (elem.getModifiers().contains(PRIVATE)) {
+                    return false;
+                }
+            }
+            return !constructor(impl).throwing;
+        }
+
+        /**
+         * Merges the existing service provider configuration files and index files in the class output into this
+         * registry.
+         * An existing registration is retained if its class still exists, is still annotated with
+         * {@link ServiceImplementation} and is still assignable to the service interface.
+         * This happens if the class has not been recompiled, e.g. in an incremental build.
+         * Otherwise, the registration is dropped.
+         * <p>
+         * The service interfaces are taken from the current registrations and from the existing native image
+         * resource configuration, so that the service interfaces which have no recompiled implementations in an
+         * incremental build are retained in the native image configuration.
+         */
+        void merge() {
+            readResourcePatterns(pattern -> {
+                if (pattern.startsWith(SERVICES)) {
+                    services.computeIfAbsent(pattern.substring(SERVICES.length()), k -> new TreeSet<>());
+                }
+            });
+            val types = processingEnv.getTypeUtils();
+            for (Iterator<Map.Entry<String, SortedSet<String>>> i = services.entrySet().iterator(); i.hasNext(); ) {
+                val entry = i.next();
+                val ifaceName = entry.getKey();
+                val impls = entry.getValue();
+                val iface = typeElement(ifaceName);
+                if (!iface.isPresent()) {
+                    if (impls.isEmpty()) {
+                        debug(String.format(Locale.ENGLISH, "Dropped service interface %s from the native image configuration.", ifaceName));
+                        i.remove();
+                    }
+                    continue;
+                }
+                final Map<String, String> indexedFactories = new HashMap<>();
+                read(indexPath(ifaceName), tokens -> {
+                    if (3 == tokens.length) {
+                        indexedFactories.put(tokens[0], tokens[2]);
+                    }
+                });
+                read(configPath(ifaceName), tokens -> {
+                    val name = tokens[0];
+                    if (impls.contains(name)) {
+                        return;
+                    }
+                    val impl = typeElement(name);
+                    if (impl.isPresent()
+                            && null != impl.get().getAnnotation(ServiceImplementation.class)
+                            && types.isAssignable(types.erasure(impl.get().asType()), types.erasure(iface.get().asType()))) {
+                        impls.add(name);
+                        priorities.put(name, priority(impl.get()));
+                        ofNullable(indexedFactories.get(name))
+                                .filter(factory -> typeElement(factory).isPresent())
+                                .ifPresent(factory -> factories.putIfAbsent(name, factory));
+                    } else {
+                        debug(String.format(Locale.ENGLISH, "Dropped %s from: %s", name, configPath(ifaceName)));
+                    }
+                });
+            }
+        }
+
+        private void readResourcePatterns(final Consumer<String> consumer) {
+            try {
+                val fo = processingEnv.getFiler().getResource(CLASS_OUTPUT, "", nativeImagePath() + "resource-config.json");
+                val matcher = RESOURCE_PATTERN.matcher(fo.getCharContent(true));
+                while (matcher.find()) {
+                    consumer.accept(matcher.group(1));
+                }
+            } catch (IOException | IllegalArgumentException ignored) {
+                // There is no existing file or it cannot be read, so there is nothing to merge.
             }
-            coll.add(impl);
-            services.put(iface, coll);
+        }
+
+        private void read(final String path, final Consumer<String[]> consumer) {
+            try {
+                val fo = processingEnv.getFiler().getResource(CLASS_OUTPUT, "", path);
+                try (val r = new BufferedReader(fo.openReader(true))) {
+                    for (String line; null != (line = r.readLine()); ) {
+                        val comment = line.indexOf('#');
+                        val trimmed = (0 <= comment ? line.substring(0, comment) : line).trim();
+                        if (!trimmed.isEmpty()) {
+                            consumer.accept(trimmed.split("\\s+"));
+                        }
+                    }
+                }
+            } catch (IOException | IllegalArgumentException ignored) {
+                // There is no existing file or it cannot be read, so there is nothing to merge.
+            }
+        }
+
+        private Optional<TypeElement> typeElement(final String binaryName) {
+            for (val name : Arrays.asList(binaryName.replace('$', '.'), binaryName)) {
+                val elem = elements.getTypeElement(name);
+                if (null != elem && elements.getBinaryName(elem).contentEquals(binaryName)) {
+                    return Optional.of(elem);
+                }
+            }
+            return empty();
         }
 
         void persist() {
-            val filer = processingEnv.getFiler();
+            final Set<String> reflectedClasses = new TreeSet<>();
+            final Set<String> resources = new TreeSet<>();
             for (val entry : services.entrySet()) {
                 val iface = entry.getKey();
-                val coll = entry.getValue();
-                if (!coll.isEmpty()) {
-                    val path = "META-INF/services/" + name(iface);
-                    try {
-                        val fo = filer.createResource(CLASS_OUTPUT, "", path);
-                        try (val w = fo.openWriter()) {
-                            for (val impl : coll) {
-                                w.append(name(impl)).append("\n");
-                                debug(String.format(Locale.ENGLISH, "Registered in: %s", path), impl);
-                            }
-                        }
-                    } catch (IOException e) {
-                        error(String.format(Locale.ENGLISH, "Failed to register %d service implementation class(es) at: %s: %s", coll.size(), path, e.getMessage()));
+                val impls = entry.getValue();
+                val config = configPath(iface);
+                val index = indexPath(iface);
+                persist(config, impls, impl -> impl);
+                persist(index, impls, impl -> impl + " " + priorities.get(impl) +
+                        ofNullable(factories.get(impl)).map(factory -> " " + factory).orElse(""));
+                if (impls.isEmpty()) {
+                    continue;
+                }
+                resources.add(config);
+                resources.add(index);
+                for (val impl : impls) {
+                    reflectedClasses.add(impl);
+                    ofNullable(factories.get(impl)).ifPresent(reflectedClasses::add);
+                }
+            }
+            persistNativeImageConfiguration(reflectedClasses, resources);
+        }
+
+        private void persist(final String path,
+                             final Collection<String> impls,
+                             final Function<String, CharSequence> line) {
+            try {
+                val fo = processingEnv.getFiler().createResource(CLASS_OUTPUT, "", path);
+                try (val w = fo.openWriter()) {
+                    for (val impl : impls) {
+                        w.append(line.apply(impl)).append("\n");
+                        debug(String.format(Locale.ENGLISH, "Registered %s in: %s", impl, path));
                     }
                 }
+            } catch (IOException e) {
+                error(String.format(Locale.ENGLISH, "Failed to register %d service implementation class(es) at: %s: %s", impls.size(), path, e.getMessage()));
             }
         }
 
+        private String configPath(String iface) {
+            return SERVICES + iface;
+        }
+
+        private String indexPath(String iface) {
+            return "META-INF/service-wight/" + iface + ".idx";
+        }
+
         CharSequence name(TypeElement elem) {
             return elements.getBinaryName(elem);
         }
+
+        int priority(TypeElement elem) {
+            val annotation = elem.getAnnotation(ServiceImplementation.class);
+            return null != annotation ? annotation.priority() : 0;
+        }
     }
 }
@@ -0,0 +1,18 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.annotation.ServiceInterface;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * The service filter interface for the generated {@link Corpus}.
+ *
+ * @author Christian Schlichtherle
+ */
+@ServiceInterface
+public interface BenchmarkFilter extends UnaryOperator<Integer> {
+}
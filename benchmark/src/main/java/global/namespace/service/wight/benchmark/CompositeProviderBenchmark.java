@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.core.CompositeProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares the fused filter chain of {@link CompositeProvider#get()} with a plain loop over the list of filters.
+ * The filters cycle through four different classes, so that the call site in the loop becomes megamorphic for four or
+ * more filters.
+ * Each benchmark method cycles through the given number of distinct composite providers, each of which starts the
+ * cycle of filter classes at a different offset, so that the shared call sites see all of them like in an application
+ * with many composite providers.
+ * Run this benchmark with the option {@code -prof gc} in order to measure the allocation rate, too.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeProviderBenchmark {
+
+    @Param({"0", "1", "4", "16"})
+    public int filters;
+
+    @Param({"1", "4"})
+    public int composites;
+
+    private List<CompositeProvider<int[], Supplier<int[]>, UnaryOperator<int[]>>> fused;
+    private List<List<UnaryOperator<int[]>>> lists;
+    private Supplier<int[]> provider;
+    private int next;
+
+    @Setup
+    public void setup() {
+        provider = () -> new int[1];
+        fused = new ArrayList<>(composites);
+        lists = new ArrayList<>(composites);
+        for (int j = 0; j < composites; j++) {
+            final List<UnaryOperator<int[]>> list = new ArrayList<>(filters);
+            for (int i = 0; i < filters; i++) {
+                list.add(Filters.get(i + j));
+            }
+            fused.add(new CompositeProvider<>(singletonList(provider), list));
+            lists.add(list);
+        }
+    }
+
+    private int next() {
+        final int index = next;
+        next = index + 1 == composites ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public int[] fused() {
+        return fused.get(next()).get();
+    }
+
+    @Benchmark
+    public int[] loop() {
+        int[] product = provider.get();
+        for (UnaryOperator<int[]> filter : lists.get(next())) {
+            product = filter.apply(product);
+        }
+        return product;
+    }
+}
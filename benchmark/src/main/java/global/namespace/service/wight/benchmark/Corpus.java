@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+/**
+ * A corpus of generated implementations of {@link BenchmarkProvider} and {@link BenchmarkFilter}.
+ * The implementations get compiled with the annotation processors on the class path, so that the service provider
+ * configuration files and index files get generated just like in a regular build.
+ * This requires a JDK, not just a JRE.
+ *
+ * @author Christian Schlichtherle
+ */
+final class Corpus implements AutoCloseable {
+
+    private static final String PACKAGE = "global.namespace.service.wight.benchmark.generated";
+
+    private final Path root = Files.createTempDirectory("service-wight-corpus");
+    private final Path sources = Files.createDirectories(root.resolve("src"));
+    private final Path classes = Files.createDirectories(root.resolve("classes"));
+
+    /**
+     * Generates the given number of service provider and service filter implementations.
+     */
+    Corpus(final int implementations) throws IOException {
+        this(implementations, 0);
+    }
+
+    /**
+     * Generates the given number of service provider and service filter implementations, which share a type hierarchy
+     * of the given depth.
+     * At each level of the hierarchy, there is an abstract class which extends the abstract class of the previous level
+     * and implements an interface which extends the interface of the previous level.
+     */
+    Corpus(final int implementations, final int depth) throws IOException {
+        final String provider = hierarchy("Provider", BenchmarkProvider.class.getName(), depth);
+        final String filter = hierarchy("Filter", BenchmarkFilter.class.getName(), depth);
+        for (int i = 0; i < implementations; i++) {
+            source("Provider" + i, String.format(Locale.ENGLISH,
+                    "@global.namespace.service.wight.annotation.ServiceImplementation(priority = %1$d)%n" +
+                            "public class Provider%1$d %2$s {%n" +
+                            "    public Integer get() { return %1$d; }%n" +
+                            "}%n",
+                    i, provider));
+            source("Filter" + i, String.format(Locale.ENGLISH,
+                    "@global.namespace.service.wight.annotation.ServiceImplementation(priority = %1$d)%n" +
+                            "public class Filter%1$d %2$s {%n" +
+                            "    public Integer apply(Integer product) { return product + %1$d; }%n" +
+                            "}%n",
+                    i, filter));
+        }
+    }
+
+    /**
+     * Generates the type hierarchy for the implementations of the given service interface and returns the
+     * {@code extends} or {@code implements} clause for these implementations.
+     */
+    private String hierarchy(final String prefix, final String iface, final int depth) throws IOException {
+        for (int level = 0; level < depth; level++) {
+            source(prefix + "Trait" + level, String.format(Locale.ENGLISH,
+                    "public interface %1$sTrait%2$d extends %3$s { }%n",
+                    prefix, level, 0 == level ? iface : prefix + "Trait" + (level - 1)));
+            source(prefix + "Base" + level, String.format(Locale.ENGLISH,
+                    "public abstract class %1$sBase%2$d %3$simplements %1$sTrait%2$d { }%n",
+                    prefix, level, 0 == level ? "" : "extends " + prefix + "Base" + (level - 1) + " "));
+        }
+        return 0 == depth ? "implements " + iface : "extends " + prefix + "Base" + (depth - 1);
+    }
+
+    private void source(final String name, final String body) throws IOException {
+        try (Writer w = Files.newBufferedWriter(sources.resolve(name + ".java"), UTF_8)) {
+            w.append("package ").append(PACKAGE).append(";\n\n").append(body);
+        }
+    }
+
+    /**
+     * Compiles the generated sources with the given additional options for the Java compiler.
+     */
+    void compile(final String... options) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (null == compiler) {
+            throw new IllegalStateException("No Java compiler available - this benchmark requires a JDK.");
+        }
+        final List<String> args = new ArrayList<>(asList(
+                "-d", classes.toString(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-nowarn"));
+        args.addAll(asList(options));
+        try (Stream<Path> files = Files.list(sources)) {
+            files.forEach(file -> args.add(file.toString()));
+        }
+        final ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        if (0 != compiler.run(null, diagnostics, diagnostics, args.toArray(new String[0]))) {
+            throw new IllegalStateException("Compilation failed:\n" + diagnostics);
+        }
+    }
+
+    /**
+     * Deletes the compiled classes.
+     */
+    void clean() throws IOException {
+        delete(classes);
+        Files.createDirectories(classes);
+    }
+
+    /**
+     * Returns a new class loader for the compiled classes.
+     */
+    URLClassLoader classLoader() {
+        try {
+            return new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delete(root);
+    }
+
+    private static void delete(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Provides cheap, allocation-free filters of four different classes for benchmarking filter chains.
+ *
+ * @author Christian Schlichtherle
+ */
+final class Filters {
+
+    private Filters() {
+    }
+
+    /**
+     * Returns a filter of one out of four different classes, depending on the given index.
+     */
+    static UnaryOperator<int[]> get(final int index) {
+        switch (index % 4) {
+            case 0:
+                return new Increment();
+            case 1:
+                return new Twice();
+            case 2:
+                return new Negate();
+            default:
+                return new Shift();
+        }
+    }
+
+    static final class Increment implements UnaryOperator<int[]> {
+
+        @Override
+        public int[] apply(int[] product) {
+            product[0] += 1;
+            return product;
+        }
+    }
+
+    static final class Twice implements UnaryOperator<int[]> {
+
+        @Override
+        public int[] apply(int[] product) {
+            product[0] *= 2;
+            return product;
+        }
+    }
+
+    static final class Negate implements UnaryOperator<int[]> {
+
+        @Override
+        public int[] apply(int[] product) {
+            product[0] = -product[0];
+            return product;
+        }
+    }
+
+    static final class Shift implements UnaryOperator<int[]> {
+
+        @Override
+        public int[] apply(int[] product) {
+            product[0] ^= product[0] << 3;
+            return product;
+        }
+    }
+}
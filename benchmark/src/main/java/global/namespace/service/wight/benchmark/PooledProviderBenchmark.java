@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.core.CompositeProvider;
+import global.namespace.service.wight.core.PooledProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares building a heavy product on each call to {@link CompositeProvider#get()} with borrowing it from a
+ * {@link PooledProvider}.
+ * Run this benchmark with the option {@code -prof gc} in order to measure the allocation rate, too.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PooledProviderBenchmark {
+
+    private CompositeProvider<int[], Supplier<int[]>, UnaryOperator<int[]>> composite;
+    private PooledProvider<int[]> pool;
+
+    @Setup
+    public void setup() {
+        composite = new CompositeProvider<>(singletonList(() -> new int[1024]), emptyList());
+        pool = composite.pooled(16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public int fresh() {
+        return composite.get().length;
+    }
+
+    @Benchmark
+    public int pooled() {
+        try (PooledProvider.Lease<int[]> lease = pool.borrow()) {
+            return lease.get().length;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.core.CompositeProvider;
+import global.namespace.service.wight.core.IntCompositeProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares getting an {@code int} value from a {@link CompositeProvider} of boxed integers with getting it from an
+ * {@link IntCompositeProvider}.
+ * The values are outside of the range of the integer cache, so each boxing allocates.
+ * Run this benchmark with the option {@code -prof gc} in order to see that the {@code int} composite provider
+ * doesn't allocate.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveProviderBenchmark {
+
+    @Param({"0", "4"})
+    public int filters;
+
+    private int base = 1000;
+
+    private CompositeProvider<Integer, Supplier<Integer>, UnaryOperator<Integer>> boxed;
+    private IntCompositeProvider<IntSupplier, IntUnaryOperator> primitive;
+
+    @Setup
+    public void setup() {
+        final List<UnaryOperator<Integer>> boxedFilters = new ArrayList<>(filters);
+        final List<IntUnaryOperator> primitiveFilters = new ArrayList<>(filters);
+        for (int i = 0; i < filters; i++) {
+            boxedFilters.add(value -> value + 1);
+            primitiveFilters.add(value -> value + 1);
+        }
+        boxed = new CompositeProvider<>(singletonList(() -> base++), boxedFilters);
+        primitive = new IntCompositeProvider<>(singletonList(() -> base++), primitiveFilters);
+    }
+
+    @Benchmark
+    public int boxed() {
+        return boxed.get();
+    }
+
+    @Benchmark
+    public int primitive() {
+        return primitive.getAsInt();
+    }
+}
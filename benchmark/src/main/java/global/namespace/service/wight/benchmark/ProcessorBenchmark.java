@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.annotation.processing.ServiceImplementationProcessor;
+import global.namespace.service.wight.annotation.processing.ServiceInterfaceProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the cost of the annotation processors when compiling a corpus of generated service implementations which
+ * share a deep type hierarchy.
+ * The Java compiler runs with the option {@code -proc:only}, so the primary score covers parsing, attribution and
+ * annotation processing, but not code generation.
+ * Because most of this time goes to the Java compiler itself, the annotation processors get wrapped in order to time
+ * them directly, which is reported as the secondary score {@code processors}.
+ * This requires a JDK, not just a JRE.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProcessorBenchmark {
+
+    private static final LongAdder nanos = new LongAdder();
+
+    @Param({"10000"})
+    public int implementations;
+
+    @Param({"10", "50"})
+    public int depth;
+
+    private Corpus corpus;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        corpus = new Corpus(implementations, depth);
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() throws IOException {
+        corpus.clean();
+        nanos.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.close();
+    }
+
+    @Benchmark
+    public void process(final Timing timing) throws IOException {
+        corpus.compile("-proc:only", "-processor",
+                TimedInterfaceProcessor.class.getName() + ',' + TimedImplementationProcessor.class.getName());
+        timing.processors += nanos.sum() / 1e6;
+    }
+
+    /**
+     * Reports the time spent in the annotation processors in milliseconds.
+     * JMH reports this counter for each iteration and the sum over all measurement iterations as the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Timing {
+
+        public double processors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            processors = 0;
+        }
+    }
+
+    public static final class TimedInterfaceProcessor extends TimedProcessor {
+
+        public TimedInterfaceProcessor() {
+            super(new ServiceInterfaceProcessor());
+        }
+    }
+
+    public static final class TimedImplementationProcessor extends TimedProcessor {
+
+        public TimedImplementationProcessor() {
+            super(new ServiceImplementationProcessor());
+        }
+    }
+
+    /**
+     * Delegates to another annotation processor and adds the time spent in it to {@link #nanos}.
+     */
+    private abstract static class TimedProcessor implements Processor {
+
+        private final Processor processor;
+
+        TimedProcessor(final Processor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return processor.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return processor.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return processor.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(final ProcessingEnvironment processingEnv) {
+            final long start = System.nanoTime();
+            processor.init(processingEnv);
+            nanos.add(System.nanoTime() - start);
+        }
+
+        @Override
+        public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+            final long start = System.nanoTime();
+            try {
+                return processor.process(annotations, roundEnv);
+            } finally {
+                nanos.add(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+                                                             ExecutableElement member, String userText) {
+            return processor.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
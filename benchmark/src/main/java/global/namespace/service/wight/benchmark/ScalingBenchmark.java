@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.core.CompositeProvider;
+import global.namespace.service.wight.core.ProviderSelector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Measures how the throughput of {@link CompositeProvider#get()} scales with the number of threads for each built-in
+ * {@link ProviderSelector}.
+ * JMH cannot parameterize the number of threads by annotations, so run the {@link #main(String[])} method of this
+ * class in order to run this benchmark with 1, 2, 4, ..., 64 threads.
+ * The results get written to {@code jmh-scaling-<threads>.json} files in the current directory.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+
+    @Param({"priorityFirst", "roundRobin", "weighted", "leastLatency"})
+    public String selector;
+
+    private CompositeProvider<int[], Supplier<int[]>, UnaryOperator<int[]>> composite;
+
+    @Setup
+    public void setup() {
+        final List<UnaryOperator<int[]>> filters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            filters.add(Filters.get(i));
+        }
+        final List<Supplier<int[]>> providers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            providers.add(() -> new int[1]);
+        }
+        composite = new CompositeProvider<>(providers, filters, selector());
+    }
+
+    private ProviderSelector selector() {
+        switch (selector) {
+            case "roundRobin":
+                return ProviderSelector.roundRobin();
+            case "weighted":
+                return ProviderSelector.weighted();
+            case "leastLatency":
+                return ProviderSelector.leastLatency();
+            default:
+                return ProviderSelector.priorityFirst();
+        }
+    }
+
+    @Benchmark
+    public int[] get() {
+        return composite.get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(ScalingBenchmark.class.getName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-scaling-" + threads + ".json")
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.benchmark;
+
+import global.namespace.service.wight.core.CompositeProvider;
+import global.namespace.service.wight.core.ServiceLocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of {@link ServiceLocator#provider(Class, Class)} as the number of located service providers and
+ * filters grows, compared to iterating a raw {@link ServiceLoader}.
+ * <p>
+ * The <i>cold</i> benchmark uses a new class loader for each invocation, so it includes the cost of class loading.
+ * The <i>warm</i> benchmarks reuse the same class loader, so all classes have already been loaded.
+ *
+ * @author Christian Schlichtherle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceLocatorBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int implementations;
+
+    private Corpus corpus;
+    private URLClassLoader classLoader;
+    private ServiceLocator cachedLocator;
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = new Corpus(implementations);
+        corpus.compile();
+        classLoader = corpus.classLoader();
+        cachedLocator = new ServiceLocator(classLoader).cached();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        classLoader.close();
+        corpus.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public CompositeProvider<Integer, BenchmarkProvider, BenchmarkFilter> cold(final ColdState state) {
+        return new ServiceLocator(state.classLoader).provider(BenchmarkProvider.class, BenchmarkFilter.class);
+    }
+
+    @Benchmark
+    public CompositeProvider<Integer, BenchmarkProvider, BenchmarkFilter> warm() {
+        return new ServiceLocator(classLoader).provider(BenchmarkProvider.class, BenchmarkFilter.class);
+    }
+
+    @Benchmark
+    public CompositeProvider<Integer, BenchmarkProvider, BenchmarkFilter> warmLazy() {
+        return new ServiceLocator(classLoader).lazy().provider(BenchmarkProvider.class, BenchmarkFilter.class);
+    }
+
+    @Benchmark
+    public CompositeProvider<Integer, BenchmarkProvider, BenchmarkFilter> warmCached() {
+        return cachedLocator.provider(BenchmarkProvider.class, BenchmarkFilter.class);
+    }
+
+    @Benchmark
+    public void serviceLoader(final Blackhole blackhole) {
+        for (BenchmarkProvider provider : ServiceLoader.load(BenchmarkProvider.class, classLoader)) {
+            blackhole.consume(provider);
+        }
+        for (BenchmarkFilter filter : ServiceLoader.load(BenchmarkFilter.class, classLoader)) {
+            blackhole.consume(filter);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ColdState {
+
+        URLClassLoader classLoader;
+
+        @Setup(Level.Invocation)
+        public void setup(final ServiceLocatorBenchmark benchmark) {
+            classLoader = benchmark.corpus.classLoader();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            classLoader.close();
+        }
+    }
+}
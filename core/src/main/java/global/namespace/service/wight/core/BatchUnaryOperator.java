@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A unary operator which can transform a list of operands in bulk.
+ * Service filters may implement this interface in order to amortize some expensive setup, e.g. compiling a regular
+ * expression or initializing a cipher, across all products when calling {@link CompositeProvider#getBatch(int)} or
+ * {@link CompositeProvider#getAll(java.util.Collection)}.
+ * Service filters implementing this interface get located like any other service filter.
+ *
+ * @param <T> the type of the operands and results.
+ * @author Christian Schlichtherle
+ */
+public interface BatchUnaryOperator<T> extends UnaryOperator<T> {
+
+    /**
+     * Applies this operator to each of the given operands and returns the list of results in the same order.
+     * The returned list must have the same size as the given list.
+     * The default implementation calls {@link #apply(Object)} for each operand.
+     *
+     * @param operands the list of operands.
+     *                 Implementations may modify this list and return it as the list of results.
+     */
+    default List<T> applyAll(List<T> operands) {
+        final List<T> results = new ArrayList<>(operands.size());
+        for (T operand : operands) {
+            results.add(apply(operand));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Comparator.comparingInt;
+import static java.util.Optional.empty;
+import static java.util.Optional.ofNullable;
+
+/**
+ * A located implementation of some service which has not necessarily been loaded or instantiated yet.
+ *
+ * @param <S> the type of the service.
+ * @author Christian Schlichtherle
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+final class Candidate<S> implements Supplier<S> {
+
+    static final Comparator<Candidate<?>> ASCENDING_PRIORITY = comparingInt(Candidate::priority);
+
+    static final Comparator<Candidate<?>> DESCENDING_PRIORITY = ASCENDING_PRIORITY.reversed();
+
+    /**
+     * Memoizes the instance of each generated factory class, so that it gets instantiated only once per class loader
+     * rather than once per implementation class.
+     * A class value doesn't prevent the factory class or its class loader from being garbage collected.
+     */
+    private static final ClassValue<Optional<Function<String, ?>>> FACTORIES =
+            new ClassValue<Optional<Function<String, ?>>>() {
+
+                @Override
+                @SuppressWarnings("unchecked")
+                protected Optional<Function<String, ?>> computeValue(final Class<?> type) {
+                    try {
+                        final Object factories = type.getConstructor().newInstance();
+                        if (factories instanceof Function) {
+                            return Optional.of((Function<String, ?>) factories);
+                        }
+                    } catch (ReflectiveOperationException | RuntimeException | LinkageError ignored) {
+                        // The factory class is stale, so fall back to reflection.
+                    }
+                    return empty();
+                }
+            };
+
+    private final Class<S> service;
+    private final String name;
+    private final ClassLoader classLoader;
+    private final Optional<Integer> indexedPriority;
+    private final Optional<String> indexedFactory;
+
+    private volatile Class<?> type;
+    private volatile Optional<Supplier<?>> factory;
+
+    Candidate(final Class<S> service,
+              final String name,
+              final ClassLoader classLoader,
+              final Optional<Integer> indexedPriority,
+              final Optional<String> indexedFactory) {
+        this.service = service;
+        this.name = name;
+        this.classLoader = classLoader;
+        this.indexedPriority = indexedPriority;
+        this.indexedFactory = indexedFactory;
+    }
+
+    /**
+     * Returns the binary name of the implementation class.
+     */
+    String name() {
+        return name;
+    }
+
+    /**
+     * Returns the priority of the implementation class.
+     * If the priority has been recorded in an index file, then the implementation class does not get loaded.
+     */
+    int priority() {
+        return indexedPriority.orElseGet(() -> priorityOf(type()));
+    }
+
+    /**
+     * Returns a new instance of the implementation class and reports the duration to the {@link ServiceMetrics}, if
+     * any.
+     *
+     * @throws ServiceConfigurationError if loading or instantiating the implementation class fails for some reason.
+     */
+    @Override
+    public S get() {
+        if (!Metrics.ENABLED) {
+            return instantiate();
+        }
+        final long start = System.nanoTime();
+        final S instance = instantiate();
+        Metrics.INSTANCE.instantiated(service, instance.getClass(), System.nanoTime() - start);
+        return instance;
+    }
+
+    /**
+     * Returns a new instance of the implementation class.
+     * If a factory class has been recorded in an index file, then it's used to call the constructor of the
+     * implementation class directly.
+     * Otherwise, or if the factory class is missing or stale, the constructor gets called via reflection.
+     *
+     * @throws ServiceConfigurationError if loading or instantiating the implementation class fails for some reason.
+     */
+    S instantiate() {
+        final Optional<Supplier<?>> factory = factory();
+        if (factory.isPresent()) {
+            final Object instance;
+            try {
+                instance = factory.get().get();
+            } catch (RuntimeException | LinkageError e) {
+                throw error("Provider " + name + " could not be instantiated", e);
+            }
+            if (!service.isInstance(instance)) {
+                throw error("Provider " + name + " not a subtype");
+            }
+            return service.cast(instance);
+        }
+        final Class<?> type = type();
+        if (!service.isAssignableFrom(type)) {
+            throw error("Provider " + name + " not a subtype");
+        }
+        try {
+            return service.cast(type.getConstructor().newInstance());
+        } catch (InvocationTargetException e) {
+            throw error("Provider " + name + " could not be instantiated", e.getCause());
+        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException e) {
+            throw error("Provider " + name + " could not be instantiated", e);
+        }
+    }
+
+    private Optional<Supplier<?>> factory() {
+        Optional<Supplier<?>> factory = this.factory;
+        if (null == factory) {
+            this.factory = factory = indexedFactory.flatMap(this::factory);
+        }
+        return factory;
+    }
+
+    private Optional<Supplier<?>> factory(final String factoryName) {
+        try {
+            final Object factory = FACTORIES
+                    .get(Class.forName(factoryName, true, classLoader))
+                    .map(factories -> factories.apply(name))
+                    .orElse(null);
+            if (factory instanceof Supplier) {
+                return Optional.of((Supplier<?>) factory);
+            }
+        } catch (ClassNotFoundException | RuntimeException | LinkageError ignored) {
+            // The factory class is missing or stale, so fall back to reflection.
+        }
+        return empty();
+    }
+
+    private Class<?> type() {
+        Class<?> type = this.type;
+        if (null == type) {
+            try {
+                this.type = type = Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw error("Provider " + name + " not found", e);
+            }
+        }
+        return type;
+    }
+
+    private ServiceConfigurationError error(String message) {
+        return new ServiceConfigurationError(service.getName() + ": " + message);
+    }
+
+    private ServiceConfigurationError error(String message, Throwable cause) {
+        return new ServiceConfigurationError(service.getName() + ": " + message, cause);
+    }
+
+    /**
+     * Returns the priority declared by the {@link ServiceImplementation} annotation of the given class or zero if the
+     * class is not annotated.
+     */
+    static int priorityOf(Class<?> type) {
+        return ofNullable(type.getDeclaredAnnotation(ServiceImplementation.class))
+                .map(ServiceImplementation::priority)
+                .orElse(0);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
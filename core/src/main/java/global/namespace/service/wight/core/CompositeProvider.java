@@ -4,8 +4,14 @@
  */
 package global.namespace.service.wight.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
@@ -21,8 +27,13 @@ import java.util.function.UnaryOperator;
  */
 public final class CompositeProvider<S, SP extends Supplier<S>, SF extends UnaryOperator<S>> implements Supplier<S> {
 
+    static final Duration MAX_DURATION = Duration.ofNanos(Long.MAX_VALUE);
+
     private final List<SP> providers;
     private final List<SF> filters;
+    private final ProviderSelector selector;
+    private final Supplier<S> selected;
+    private final Supplier<S> product;
 
     /**
      * Constructs a composite provider.
@@ -32,22 +43,70 @@ public final class CompositeProvider<S, SP extends Supplier<S>, SF extends Unary
      * @param filters   a (possibly empty) list of service filters.
      *                  All elements are used in order on a call to {@link #get()}.
      */
-    public CompositeProvider(final List<SP> providers, final List<SF> filters) {
+    public CompositeProvider(List<SP> providers, List<SF> filters) {
+        this(providers, filters, ProviderSelector.priorityFirst());
+    }
+
+    /**
+     * Constructs a composite provider.
+     *
+     * @param providers a non-empty list of service providers, sorted by descending priority.
+     * @param filters   a (possibly empty) list of service filters.
+     *                  All elements are used in order on a call to {@link #get()}.
+     * @param selector  the selector for the service provider to use on a call to {@link #get()}.
+     */
+    public CompositeProvider(final List<SP> providers, final List<SF> filters, final ProviderSelector selector) {
         if (providers.isEmpty()) {
             throw new IllegalArgumentException();
         }
-        this.providers = new ArrayList<>(providers);
-        this.filters = new ArrayList<>(filters);
+        this.providers = copy(providers);
+        this.filters = copy(filters);
+        this.selector = selector;
+        this.selected = selector.select(this.providers);
+        this.product = Metrics.ENABLED ? instrument() : fuse(selected, this.filters);
+    }
+
+    private Supplier<S> instrument() {
+        final List<UnaryOperator<S>> timed = new ArrayList<>(filters.size());
+        for (UnaryOperator<S> filter : filters) {
+            timed.add(product -> {
+                final long start = System.nanoTime();
+                final S result = filter.apply(product);
+                Metrics.INSTANCE.filtered(filter, System.nanoTime() - start);
+                return result;
+            });
+        }
+        final Supplier<S> fused = fuse(selected, timed);
+        return () -> {
+            final long start = System.nanoTime();
+            final S product = fused.get();
+            Metrics.INSTANCE.produced(this, System.nanoTime() - start);
+            return product;
+        };
+    }
+
+    private static <E> List<E> copy(List<E> list) {
+        return list instanceof LazyList ? list : new ArrayList<>(list);
     }
 
     /**
      * Returns a protective copy of the list of service providers.
      * The list is never empty.
+     * If the service providers have been located by a {@linkplain ServiceLocator#lazy() lazy} service locator, then
+     * calling this method instantiates all of them.
      */
     public List<SP> providers() {
         return new ArrayList<>(providers);
     }
 
+    /**
+     * Returns the service provider with the highest priority, which is used on a call to {@link #get()} unless another
+     * {@linkplain ProviderSelector selector} is used.
+     */
+    SP provider() {
+        return providers.get(0);
+    }
+
     /**
      * Returns a protective copy of the list of service filters.
      * The list may be empty.
@@ -56,13 +115,311 @@ public final class CompositeProvider<S, SP extends Supplier<S>, SF extends Unary
         return new ArrayList<>(filters);
     }
 
+    /**
+     * Fuses the given provider and filters into a single provider.
+     *
+     * @see #fuse(List)
+     */
+    private static <S> Supplier<S> fuse(final Supplier<S> provider, final List<? extends UnaryOperator<S>> filters) {
+        if (filters.isEmpty()) {
+            return provider;
+        }
+        final UnaryOperator<S> chain = fuse(filters);
+        return () -> chain.apply(provider.get());
+    }
+
+    /**
+     * Fuses the given filters into a single filter.
+     * Chains of up to three filters get specialized into nested lambdas with no loop, so that each call site has a
+     * fixed shape and the JIT compiler can inline it.
+     * Longer chains get fused recursively in groups of three, so that no call site has to dispatch to all filters of
+     * the chain.
+     */
+    static <S> UnaryOperator<S> fuse(final List<? extends UnaryOperator<S>> filters) {
+        switch (filters.size()) {
+            case 0:
+                return UnaryOperator.identity();
+            case 1:
+                return filters.get(0);
+            case 2: {
+                final UnaryOperator<S> f0 = filters.get(0), f1 = filters.get(1);
+                return product -> f1.apply(f0.apply(product));
+            }
+            case 3: {
+                final UnaryOperator<S> f0 = filters.get(0), f1 = filters.get(1), f2 = filters.get(2);
+                return product -> f2.apply(f1.apply(f0.apply(product)));
+            }
+            default: {
+                final UnaryOperator<S> head = fuse(filters.subList(0, 3)),
+                        tail = fuse(filters.subList(3, filters.size()));
+                return product -> tail.apply(head.apply(product));
+            }
+        }
+    }
+
     @Override
     public S get() {
-        S product = providers.get(0).get();
-        for (UnaryOperator<S> filter : filters) {
-            product = filter.apply(product);
+        return product.get();
+    }
+
+    /**
+     * Returns a list of the given number of products.
+     * The selected service provider gets called to obtain the given number of products.
+     * Then each service filter gets applied in order to all products before the next service filter.
+     * Service filters which implement {@link BatchUnaryOperator} get applied to all products in bulk.
+     * They may return an unmodifiable list because the products get copied into a new list whenever necessary.
+     *
+     * @param n the non-negative number of products.
+     * @throws IllegalStateException if a batch unary operator returns a list with a different size.
+     */
+    @SuppressWarnings("unchecked")
+    public List<S> getBatch(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException(n + " is negative.");
+        }
+        List<S> products = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            products.add(selected.get());
+        }
+        boolean owned = true;
+        for (SF filter : filters) {
+            if (!owned) {
+                products = new ArrayList<>(products);
+                owned = true;
+            }
+            if (filter instanceof BatchUnaryOperator) {
+                products = ((BatchUnaryOperator<S>) filter).applyAll(products);
+                if (products.size() != n) {
+                    throw new IllegalStateException(
+                            filter + " returned " + products.size() + " instead of " + n + " products.");
+                }
+                owned = false;
+            } else {
+                products.replaceAll(filter);
+            }
+        }
+        return owned ? products : new ArrayList<>(products);
+    }
+
+    /**
+     * Returns a map of a product for each distinct key in the given collection.
+     * The products are obtained by calling {@link #getBatch(int)}.
+     * The returned map iterates the keys in the order of their first occurrence in the given collection.
+     *
+     * @param <K>  the type of the keys.
+     * @param keys the collection of keys.
+     */
+    public <K> Map<K, S> getAll(final Collection<? extends K> keys) {
+        final Set<K> distinct = new LinkedHashSet<>(keys);
+        final Iterator<S> products = getBatch(distinct.size()).iterator();
+        final Map<K, S> map = new LinkedHashMap<>();
+        for (K key : distinct) {
+            map.put(key, products.next());
         }
-        return product;
+        return map;
+    }
+
+    /**
+     * Returns a future product.
+     * The selected service provider and the service filters get called on a virtual thread if the runtime supports
+     * them or on a bounded pool of daemon threads otherwise.
+     */
+    public CompletableFuture<S> getAsync() {
+        return getAsync(DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Returns a future product.
+     * The selected service provider and the service filters get called in a single task on the given executor, so
+     * that none of them runs on the calling thread, not even if the product is ready before this method returns.
+     *
+     * @param executor the executor for calling the selected service provider and the service filters.
+     */
+    public CompletableFuture<S> getAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(product, executor);
+    }
+
+    /**
+     * Returns a provider which memoizes the products of this composite provider for the given time to live.
+     * The products get rebuilt in the background on the {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @param timeToLive the positive duration for memoizing a product.
+     * @see MemoizedProvider
+     */
+    public MemoizedProvider<S> memoized(Duration timeToLive) {
+        return memoized(timeToLive, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a provider which memoizes the products of this composite provider for the given time to live.
+     * The products get rebuilt in the background on the given executor.
+     *
+     * @param timeToLive the positive duration for memoizing a product.
+     * @param executor   the executor for rebuilding the product in the background.
+     * @see MemoizedProvider
+     */
+    public MemoizedProvider<S> memoized(Duration timeToLive, Executor executor) {
+        return memoized(timeToLive, executor, System::nanoTime);
+    }
+
+    /**
+     * Returns a provider which memoizes the products of this composite provider for the given time to live.
+     * The products get rebuilt in the background on the given executor.
+     * The age of the products gets measured with the given ticker, e.g. a fake ticker for testing.
+     *
+     * @param timeToLive the positive duration for memoizing a product.
+     * @param executor   the executor for rebuilding the product in the background.
+     * @param ticker     the source of the current time in nanoseconds, like {@link System#nanoTime()}.
+     * @see MemoizedProvider
+     */
+    public MemoizedProvider<S> memoized(Duration timeToLive, Executor executor, LongSupplier ticker) {
+        return new MemoizedProvider<>(this, timeToLive, executor, ticker);
+    }
+
+    /**
+     * Returns a composite provider with the same service providers and filters as this composite provider, but which
+     * uses the given selector for the service provider to use on a call to {@link #get()}.
+     * Unless the given selector is {@linkplain ProviderSelector#priorityFirst() priority first}, this instantiates all
+     * service providers which have been located by a {@linkplain ServiceLocator#lazy() lazy} service locator.
+     *
+     * @param selector the selector for the service provider to use on a call to {@link #get()}.
+     */
+    public CompositeProvider<S, SP, SF> select(ProviderSelector selector) {
+        return selector == this.selector ? this : new CompositeProvider<>(providers, filters, selector);
+    }
+
+    /**
+     * Returns a provider which hedges the calls to the service provider with the highest priority after the given
+     * delay.
+     * The service providers get called on a virtual thread if the runtime supports them or on a bounded pool of daemon
+     * threads otherwise.
+     *
+     * @param delay  the positive delay after which a call gets hedged.
+     * @param budget the maximum fraction of calls to hedge in the range from 0 to 1.
+     * @see HedgedProvider
+     */
+    public HedgedProvider<S> hedged(Duration delay, double budget) {
+        return hedged(delay, budget, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Returns a provider which hedges the calls to the service provider with the highest priority after the given
+     * delay.
+     *
+     * @param delay    the positive delay after which a call gets hedged.
+     * @param budget   the maximum fraction of calls to hedge in the range from 0 to 1.
+     * @param executor the executor for calling the service providers.
+     * @see HedgedProvider
+     */
+    public HedgedProvider<S> hedged(Duration delay, double budget, Executor executor) {
+        return new HedgedProvider<>(providers.get(0), secondary(), fuse(filters), delay, budget, executor);
+    }
+
+    /**
+     * Returns a provider which hedges the calls to the service provider with the highest priority after a delay which
+     * is the given percentile of its observed latencies.
+     * The service providers get called on a virtual thread if the runtime supports them or on a bounded pool of daemon
+     * threads otherwise.
+     *
+     * @param percentile the percentile of the observed latencies in the range from 0 to 100 (exclusive), e.g. 95.
+     * @param budget     the maximum fraction of calls to hedge in the range from 0 to 1.
+     * @see HedgedProvider
+     */
+    public HedgedProvider<S> hedged(double percentile, double budget) {
+        return hedged(percentile, budget, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Returns a provider which hedges the calls to the service provider with the highest priority after a delay which
+     * is the given percentile of its observed latencies.
+     *
+     * @param percentile the percentile of the observed latencies in the range from 0 to 100 (exclusive), e.g. 95.
+     * @param budget     the maximum fraction of calls to hedge in the range from 0 to 1.
+     * @param executor   the executor for calling the service providers.
+     * @see HedgedProvider
+     */
+    public HedgedProvider<S> hedged(double percentile, double budget, Executor executor) {
+        return new HedgedProvider<>(providers.get(0), secondary(), fuse(filters), percentile, budget, executor);
+    }
+
+    /**
+     * Returns a provider which aggregates the products of all service providers using the given reducer.
+     * The service providers get called on a virtual thread if the runtime supports them or on a bounded pool of daemon
+     * threads otherwise.
+     *
+     * @param reducer the reducer for the products of the service providers.
+     * @param timeout the positive duration to wait for the products of the service providers.
+     * @see FanOutProvider
+     * @see ServiceLocator#reducer(Class)
+     */
+    public FanOutProvider<S> fanOut(BinaryOperator<S> reducer, Duration timeout) {
+        return fanOut(reducer, timeout, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Returns a provider which aggregates the products of all service providers using the given reducer.
+     *
+     * @param reducer  the reducer for the products of the service providers.
+     * @param timeout  the positive duration to wait for the products of the service providers.
+     * @param executor the executor for calling the service providers, e.g. a {@link ForkJoinPool}.
+     * @see FanOutProvider
+     * @see ServiceLocator#reducer(Class)
+     */
+    public FanOutProvider<S> fanOut(BinaryOperator<S> reducer, Duration timeout, Executor executor) {
+        return new FanOutProvider<>(providers(), reducer, fuse(filters), timeout, executor);
+    }
+
+    private SP secondary() {
+        return providers.get(1 < providers.size() ? 1 : 0);
+    }
+
+    /**
+     * Returns a provider which confines the products of this composite provider to threads, so that each platform
+     * thread reuses its own product.
+     *
+     * @see ThreadConfinedProvider
+     */
+    public ThreadConfinedProvider<S> perThread() {
+        return perThread(product -> {
+        });
+    }
+
+    /**
+     * Returns a provider which confines the products of this composite provider to threads, so that each platform
+     * thread reuses its own product.
+     *
+     * @param cleanup the hook to call for each product which gets discarded.
+     * @see ThreadConfinedProvider
+     */
+    public ThreadConfinedProvider<S> perThread(Consumer<? super S> cleanup) {
+        return new ThreadConfinedProvider<>(this, cleanup);
+    }
+
+    /**
+     * Returns a bounded pool of the products of this composite provider.
+     * Returned products are pooled as is and are never discarded for being idle.
+     *
+     * @param capacity the positive maximum number of idle products.
+     * @see PooledProvider
+     */
+    public PooledProvider<S> pooled(int capacity) {
+        return pooled(capacity, UnaryOperator.identity(), MAX_DURATION, product -> {
+        });
+    }
+
+    /**
+     * Returns a bounded pool of the products of this composite provider.
+     *
+     * @param capacity the positive maximum number of idle products.
+     * @param reset    the operator for resetting a returned product.
+     *                 It may return {@code null} in order to discard the product.
+     * @param maxIdle  the positive duration after which an idle product gets discarded.
+     * @param cleanup  the hook to call for each product which gets discarded.
+     * @see PooledProvider
+     */
+    public PooledProvider<S> pooled(int capacity, UnaryOperator<S> reset, Duration maxIdle,
+                                    Consumer<? super S> cleanup) {
+        return new PooledProvider<>(this, capacity, reset, maxIdle, cleanup);
     }
 
     @Override
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the default executor for running potentially blocking tasks, e.g. I/O bound service providers.
+ * If the runtime supports virtual threads, then the executor starts a new virtual thread per task.
+ * Otherwise, the executor is a bounded pool of daemon threads.
+ *
+ * @author Christian Schlichtherle
+ */
+final class DefaultExecutor {
+
+    private static final int POOL_SIZE = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    static final Executor INSTANCE = create();
+
+    private DefaultExecutor() {
+    }
+
+    private static Executor create() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return pool();
+        }
+    }
+
+    private static Executor pool() {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+            final Thread thread = new Thread(task, "service-wight-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Defers the location of the service providers and filters for some service until a product is needed for the first
+ * time, so that creating providers for rarely used features doesn't slow down the startup of an application.
+ * The first call to {@link #get()} locates the composite provider and every subsequent call reuses it.
+ * Concurrent first calls get collapsed so that the location happens only once.
+ * Once located, each call costs only a volatile read on top of the composite provider.
+ * <p>
+ * If the location fails, the original {@link java.util.ServiceConfigurationError} gets thrown by the call which
+ * triggered it and the location gets retried on the next call.
+ *
+ * @param <S>  the type of the products.
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see ServiceLocator#lazyProvider(Class, Class)
+ */
+public final class DeferredProvider<S, SP extends Supplier<S>, SF extends UnaryOperator<S>> implements Supplier<S> {
+
+    private final Supplier<CompositeProvider<S, SP, SF>> locate;
+
+    private volatile CompositeProvider<S, SP, SF> composite;
+
+    DeferredProvider(final Supplier<CompositeProvider<S, SP, SF>> locate) {
+        this.locate = locate;
+    }
+
+    /**
+     * Returns {@code true} if and only if the composite provider has been located.
+     */
+    public boolean isLocated() {
+        return null != composite;
+    }
+
+    /**
+     * Returns the composite provider, locating it first if necessary.
+     *
+     * @throws java.util.ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public CompositeProvider<S, SP, SF> composite() {
+        CompositeProvider<S, SP, SF> composite = this.composite;
+        if (null == composite) {
+            synchronized (this) {
+                composite = this.composite;
+                if (null == composite) {
+                    this.composite = composite = locate.get();
+                }
+            }
+        }
+        return composite;
+    }
+
+    /**
+     * Returns a new product from the composite provider, locating it first if necessary.
+     *
+     * @throws java.util.ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    @Override
+    public S get() {
+        return composite().get();
+    }
+
+    @Override
+    public String toString() {
+        final CompositeProvider<S, SP, SF> composite = this.composite;
+        return getClass().getSimpleName() + '[' + (null == composite ? "not located" : composite) + ']';
+    }
+}
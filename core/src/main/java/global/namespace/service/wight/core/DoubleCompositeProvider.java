@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A provider of some {@code double} value which is generated from a list of service providers and a list of service
+ * filters.
+ * This is the counterpart of {@link CompositeProvider} for service interfaces which extend {@link DoubleSupplier} and
+ * {@link DoubleUnaryOperator}, so that calling {@link #getAsDouble()} never boxes the value.
+ *
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see ServiceLocator#doubleProvider(Class, Class)
+ */
+public final class DoubleCompositeProvider<SP extends DoubleSupplier, SF extends DoubleUnaryOperator>
+        extends PrimitiveCompositeProvider<SP, SF> implements DoubleSupplier {
+
+    private final DoubleSupplier product;
+
+    /**
+     * Constructs a {@code double} composite provider.
+     *
+     * @param providers a non-empty list of service providers.
+     *                  Only the first element is used on a call to {@link #getAsDouble()}.
+     * @param filters   a (possibly empty) list of service filters.
+     *                  All elements are used in order on a call to {@link #getAsDouble()}.
+     */
+    public DoubleCompositeProvider(final List<SP> providers, final List<SF> filters) {
+        super(providers, filters);
+        this.product = fuse(this.providers.get(0), this.filters);
+    }
+
+    /**
+     * Fuses the given provider and filters into a single provider.
+     *
+     * @see #fuse(List)
+     */
+    private static DoubleSupplier fuse(final DoubleSupplier provider,
+                                       final List<? extends DoubleUnaryOperator> filters) {
+        if (filters.isEmpty()) {
+            return provider;
+        }
+        final DoubleUnaryOperator chain = fuse(filters);
+        return () -> chain.applyAsDouble(provider.getAsDouble());
+    }
+
+    /**
+     * Fuses the given filters into a single filter, just like {@link CompositeProvider#fuse(List)} does.
+     */
+    private static DoubleUnaryOperator fuse(final List<? extends DoubleUnaryOperator> filters) {
+        switch (filters.size()) {
+            case 0:
+                return DoubleUnaryOperator.identity();
+            case 1:
+                return filters.get(0);
+            case 2: {
+                final DoubleUnaryOperator f0 = filters.get(0), f1 = filters.get(1);
+                return value -> f1.applyAsDouble(f0.applyAsDouble(value));
+            }
+            case 3: {
+                final DoubleUnaryOperator f0 = filters.get(0), f1 = filters.get(1), f2 = filters.get(2);
+                return value -> f2.applyAsDouble(f1.applyAsDouble(f0.applyAsDouble(value)));
+            }
+            default: {
+                final DoubleUnaryOperator head = fuse(filters.subList(0, 3)),
+                        tail = fuse(filters.subList(3, filters.size()));
+                return value -> tail.applyAsDouble(head.applyAsDouble(value));
+            }
+        }
+    }
+
+    @Override
+    public double getAsDouble() {
+        return product.getAsDouble();
+    }
+}
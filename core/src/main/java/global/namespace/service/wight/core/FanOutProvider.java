@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A provider which aggregates the products of all service providers, e.g. to collect the health checks or
+ * configuration fragments of all plugins.
+ * Each call to {@link #get()} calls all service providers in parallel on an executor and reduces their products in
+ * the order of descending priority of the service providers using a reducer.
+ * Finally, the service filters get applied once to the reduced product.
+ * <p>
+ * Each service provider has to return its product within the timeout, which starts with the call to {@link #get()}.
+ * Otherwise, its call gets cancelled by interrupting it and its product gets omitted from the reduction, so a stalled
+ * plugin degrades the aggregated product instead of blocking it.
+ * If any service provider throws an exception however, the calls to all other service providers get cancelled and the
+ * exception gets rethrown.
+ *
+ * @param <S> the type of the products.
+ * @author Christian Schlichtherle
+ * @see CompositeProvider#fanOut(BinaryOperator, Duration)
+ */
+public final class FanOutProvider<S> implements Supplier<S> {
+
+    private final List<? extends Supplier<S>> providers;
+    private final BinaryOperator<S> reducer;
+    private final UnaryOperator<S> filters;
+    private final long timeout;
+    private final Executor executor;
+    private final LongAdder timeouts = new LongAdder();
+
+    FanOutProvider(final List<? extends Supplier<S>> providers,
+                   final BinaryOperator<S> reducer,
+                   final UnaryOperator<S> filters,
+                   final Duration timeout,
+                   final Executor executor) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException(timeout + " is not positive.");
+        }
+        this.providers = providers;
+        this.reducer = reducer;
+        this.filters = filters;
+        this.timeout = timeout.toNanos();
+        this.executor = executor;
+    }
+
+    /**
+     * Returns a new product which is reduced from the products of all service providers which have returned their
+     * product within the timeout.
+     *
+     * @throws CompletionException if no service provider has returned its product within the timeout or if the
+     *                             current thread gets interrupted while waiting for the products.
+     */
+    @Override
+    public S get() {
+        final long deadline = System.nanoTime() + timeout;
+        final List<FutureTask<S>> tasks = new ArrayList<>(providers.size());
+        for (Supplier<S> provider : providers) {
+            final FutureTask<S> task = new FutureTask<>(provider::get);
+            executor.execute(task);
+            tasks.add(task);
+        }
+        S product = null;
+        boolean reduced = false;
+        try {
+            for (FutureTask<S> task : tasks) {
+                final S next;
+                try {
+                    next = task.get(Math.max(0, deadline - System.nanoTime()), NANOSECONDS);
+                } catch (TimeoutException e) {
+                    task.cancel(true);
+                    timeouts.increment();
+                    continue;
+                }
+                product = reduced ? reducer.apply(product, next) : next;
+                reduced = true;
+            }
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        if (!reduced) {
+            throw new CompletionException(new TimeoutException(
+                    "No service provider returned its product within " + Duration.ofNanos(timeout) + "."));
+        }
+        return filters.apply(product);
+    }
+
+    /**
+     * Returns the number of calls to service providers which have been cancelled because they haven't returned their
+     * product within the timeout.
+     */
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[providers = " + providers + ", reducer = " + reducer + ", timeout = " +
+                Duration.ofNanos(timeout) + ']';
+    }
+}
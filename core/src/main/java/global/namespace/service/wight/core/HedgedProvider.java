@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A provider which hedges the calls to the service provider with the highest priority in order to cut tail latency.
+ * Each call to {@link #get()} calls the service provider with the highest priority on an executor.
+ * If it hasn't returned a product within the hedging delay, the same call gets fired at the service provider with the
+ * next highest priority, or at the same service provider again if there is no other.
+ * The first product which gets returned wins and the other call gets cancelled by interrupting it.
+ * Finally, the service filters get applied once to the winning product.
+ * <p>
+ * The hedging delay is either fixed or derived from a percentile of the observed latencies of the service provider
+ * with the highest priority.
+ * In the latter case, no calls get hedged until enough latencies have been observed.
+ * <p>
+ * The hedge rate budget limits the number of hedged calls to the given fraction of all calls, so that hedging can't
+ * double the load on the service providers even if all of them become slow.
+ * Unused budget accumulates only up to a small burst of hedged calls.
+ *
+ * @param <S> the type of the products.
+ * @author Christian Schlichtherle
+ * @see CompositeProvider#hedged(Duration, double)
+ * @see CompositeProvider#hedged(double, double)
+ */
+public final class HedgedProvider<S> implements Supplier<S> {
+
+    private static final int MIN_SAMPLES = 100;
+    private static final int UPDATE_RATE = 64;
+    private static final double MAX_BURST = 10;
+
+    private final Supplier<S> primary, secondary;
+    private final UnaryOperator<S> filters;
+    private final double percentile;
+    private final double budget;
+    private final Executor executor;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder(), hedges = new LongAdder();
+    private final AtomicLong spent = new AtomicLong();
+
+    private volatile long delay;
+
+    private HedgedProvider(final Supplier<S> primary,
+                           final Supplier<S> secondary,
+                           final UnaryOperator<S> filters,
+                           final long delay,
+                           final double percentile,
+                           final double budget,
+                           final Executor executor) {
+        if (budget < 0 || budget > 1) {
+            throw new IllegalArgumentException(budget + " is not in the range from 0 to 1.");
+        }
+        this.primary = primary;
+        this.secondary = secondary;
+        this.filters = filters;
+        this.delay = delay;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.executor = executor;
+    }
+
+    HedgedProvider(Supplier<S> primary, Supplier<S> secondary, UnaryOperator<S> filters, Duration delay, double budget,
+                   Executor executor) {
+        this(primary, secondary, filters, positive(delay).toNanos(), Double.NaN, budget, executor);
+    }
+
+    HedgedProvider(Supplier<S> primary, Supplier<S> secondary, UnaryOperator<S> filters, double percentile,
+                   double budget, Executor executor) {
+        this(primary, secondary, filters, Long.MAX_VALUE, percentile(percentile), budget, executor);
+    }
+
+    private static Duration positive(final Duration delay) {
+        if (delay.isNegative() || delay.isZero()) {
+            throw new IllegalArgumentException(delay + " is not positive.");
+        }
+        return delay;
+    }
+
+    private static double percentile(final double percentile) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException(percentile + " is not in the range from 0 to 100 (exclusive).");
+        }
+        return percentile;
+    }
+
+    /**
+     * Returns a new product.
+     *
+     * @throws CompletionException if the current thread gets interrupted while waiting for the product.
+     */
+    @Override
+    public S get() {
+        requests.increment();
+        final Attempt primary = attempt(this.primary, true);
+        S product;
+        try {
+            try {
+                product = primary.get(delay, NANOSECONDS);
+            } catch (TimeoutException e) {
+                product = hedge() ? race(primary) : primary.get();
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        return filters.apply(product);
+    }
+
+    private Attempt attempt(final Supplier<S> provider, final boolean timed) {
+        final Attempt attempt = new Attempt(provider, timed);
+        executor.execute(attempt);
+        return attempt;
+    }
+
+    private boolean hedge() {
+        while (true) {
+            final long spent = this.spent.get();
+            final double credit = budget * requests.sum() - spent;
+            if (credit < 1) {
+                return false;
+            }
+            final long forfeit = credit > MAX_BURST + 1 ? (long) (credit - MAX_BURST) : 0;
+            if (this.spent.compareAndSet(spent, spent + forfeit + 1)) {
+                hedges.increment();
+                return true;
+            }
+        }
+    }
+
+    private S race(final Attempt primary) throws InterruptedException, ExecutionException {
+        final Attempt hedge = attempt(secondary, false);
+        final CompletableFuture<S> winner = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        final BiConsumer<S, Throwable> handler = (product, failure) -> {
+            if (null == failure) {
+                winner.complete(product);
+            } else if (2 == failures.incrementAndGet()) {
+                winner.completeExceptionally(failure);
+            }
+        };
+        primary.future.whenComplete(handler);
+        hedge.future.whenComplete(handler);
+        try {
+            return winner.get();
+        } finally {
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    private void record(final long nanos) {
+        if (Double.isNaN(percentile)) {
+            return;
+        }
+        latencies.record(nanos);
+        if (0 == ThreadLocalRandom.current().nextInt(UPDATE_RATE) && MIN_SAMPLES <= latencies.count()) {
+            delay = Math.max(1, latencies.percentile(percentile));
+        }
+    }
+
+    /**
+     * Returns the current hedging delay, which is empty if no calls get hedged yet because not enough latencies have
+     * been observed.
+     */
+    public Optional<Duration> delay() {
+        final long delay = this.delay;
+        return Long.MAX_VALUE == delay ? Optional.empty() : Optional.of(Duration.ofNanos(delay));
+    }
+
+    /**
+     * Returns the number of calls to {@link #get()}.
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #get()} which have been hedged.
+     */
+    public long hedges() {
+        return hedges.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[primary = " + primary + ", secondary = " + secondary + ", delay = " +
+                delay().map(Duration::toString).orElse("none") + ", budget = " + budget + ']';
+    }
+
+    private final class Attempt extends FutureTask<S> {
+
+        final CompletableFuture<S> future = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        final boolean timed;
+
+        Attempt(final Supplier<S> provider, final boolean timed) {
+            super(provider::get);
+            this.timed = timed;
+        }
+
+        /**
+         * Completes the future of this attempt.
+         * Only the latencies of the calls to the service provider with the highest priority get recorded.
+         * The latency of a failed call gets ignored because it would skew the hedging delay.
+         * If a call gets cancelled, e.g. because the hedged call has won, then the elapsed time gets recorded as a lower
+         * bound of its latency, because otherwise the tail of the latencies would get lost and the hedging delay would
+         * drift down.
+         */
+        @Override
+        protected void done() {
+            if (timed && isCancelled()) {
+                record(System.nanoTime() - start);
+            }
+            try {
+                final S product = get();
+                if (timed) {
+                    record(System.nanoTime() - start);
+                }
+                future.complete(product);
+            } catch (ExecutionException e) {
+                future.completeExceptionally(e.getCause());
+            } catch (CancellationException | InterruptedException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
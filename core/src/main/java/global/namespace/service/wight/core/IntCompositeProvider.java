@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A provider of some {@code int} value which is generated from a list of service providers and a list of service
+ * filters.
+ * This is the counterpart of {@link CompositeProvider} for service interfaces which extend {@link IntSupplier} and
+ * {@link IntUnaryOperator}, so that calling {@link #getAsInt()} never boxes the value.
+ *
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see ServiceLocator#intProvider(Class, Class)
+ */
+public final class IntCompositeProvider<SP extends IntSupplier, SF extends IntUnaryOperator>
+        extends PrimitiveCompositeProvider<SP, SF> implements IntSupplier {
+
+    private final IntSupplier product;
+
+    /**
+     * Constructs an {@code int} composite provider.
+     *
+     * @param providers a non-empty list of service providers.
+     *                  Only the first element is used on a call to {@link #getAsInt()}.
+     * @param filters   a (possibly empty) list of service filters.
+     *                  All elements are used in order on a call to {@link #getAsInt()}.
+     */
+    public IntCompositeProvider(final List<SP> providers, final List<SF> filters) {
+        super(providers, filters);
+        this.product = fuse(this.providers.get(0), this.filters);
+    }
+
+    /**
+     * Fuses the given provider and filters into a single provider.
+     *
+     * @see #fuse(List)
+     */
+    private static IntSupplier fuse(final IntSupplier provider, final List<? extends IntUnaryOperator> filters) {
+        if (filters.isEmpty()) {
+            return provider;
+        }
+        final IntUnaryOperator chain = fuse(filters);
+        return () -> chain.applyAsInt(provider.getAsInt());
+    }
+
+    /**
+     * Fuses the given filters into a single filter, just like {@link CompositeProvider#fuse(List)} does.
+     */
+    private static IntUnaryOperator fuse(final List<? extends IntUnaryOperator> filters) {
+        switch (filters.size()) {
+            case 0:
+                return IntUnaryOperator.identity();
+            case 1:
+                return filters.get(0);
+            case 2: {
+                final IntUnaryOperator f0 = filters.get(0), f1 = filters.get(1);
+                return value -> f1.applyAsInt(f0.applyAsInt(value));
+            }
+            case 3: {
+                final IntUnaryOperator f0 = filters.get(0), f1 = filters.get(1), f2 = filters.get(2);
+                return value -> f2.applyAsInt(f1.applyAsInt(f0.applyAsInt(value)));
+            }
+            default: {
+                final IntUnaryOperator head = fuse(filters.subList(0, 3)),
+                        tail = fuse(filters.subList(3, filters.size()));
+                return value -> tail.applyAsInt(head.applyAsInt(value));
+            }
+        }
+    }
+
+    @Override
+    public int getAsInt() {
+        return product.getAsInt();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import jdk.jfr.*;
+
+import java.util.StringJoiner;
+
+/**
+ * Service metrics which are emitted as Java Flight Recorder events in the category {@code Service Wight}:
+ * <ul>
+ * <li>{@code global.namespace.service.wight.ServiceLocate} for each location of the service providers for a new
+ *     composite provider,
+ * <li>{@code global.namespace.service.wight.ServiceInstantiate} for each instantiation of an implementation class and
+ * <li>{@code global.namespace.service.wight.CompositeGet} for each product provided by a composite provider.
+ * </ul>
+ * Each event gets committed after the reported operation, so the measured duration is in its field {@code elapsed}
+ * rather than in its implicit field {@code duration}.
+ * The events are disabled by default.
+ * They can get enabled in a JFR settings file or with the option {@code -XX:StartFlightRecording=settings=...}.
+ * When no recording is running or the events are disabled, each notification costs little more than a call to
+ * {@link Event#shouldCommit()}.
+ * <p>
+ * This class requires the {@code jdk.jfr} API, which is available in Java 11 or later and in OpenJDK 8u262 or later.
+ * It is not registered by default.
+ * To enable it, set the system property {@code global.namespace.service.wight.core.ServiceMetrics} to the name of
+ * this class or register it in the service provider configuration file
+ * {@code META-INF/services/global.namespace.service.wight.core.ServiceMetrics}.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class JfrServiceMetrics implements ServiceMetrics {
+
+    @Override
+    public void instantiated(Class<?> service, Class<?> implementation, long nanos) {
+        final ServiceInstantiate event = new ServiceInstantiate();
+        if (event.shouldCommit()) {
+            event.service = service;
+            event.implementation = implementation;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void located(Class<?> service, int candidates, Object chosen, long nanos) {
+        final ServiceLocate event = new ServiceLocate();
+        if (event.shouldCommit()) {
+            event.service = service;
+            event.candidates = candidates;
+            event.chosen = chosen.getClass();
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void produced(CompositeProvider<?, ?, ?> provider, long nanos) {
+        final CompositeGet event = new CompositeGet();
+        if (event.shouldCommit()) {
+            event.provider = provider.provider().getClass();
+            event.filters = chain(provider);
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    private static String chain(CompositeProvider<?, ?, ?> provider) {
+        final StringJoiner joiner = new StringJoiner(", ");
+        for (Object filter : provider.filters()) {
+            joiner.add(filter.getClass().getName());
+        }
+        return joiner.toString();
+    }
+
+    @Name("global.namespace.service.wight.ServiceLocate")
+    @Label("Service Locate")
+    @Category("Service Wight")
+    @Description("The location of the service providers for a new composite provider")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ServiceLocate extends Event {
+
+        @Label("Service Interface")
+        Class<?> service;
+
+        @Label("Candidates")
+        @Description("The number of located service providers")
+        int candidates;
+
+        @Label("Chosen Provider")
+        Class<?> chosen;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("global.namespace.service.wight.ServiceInstantiate")
+    @Label("Service Instantiate")
+    @Category("Service Wight")
+    @Description("The instantiation of an implementation class of a service interface")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ServiceInstantiate extends Event {
+
+        @Label("Service Interface")
+        Class<?> service;
+
+        @Label("Implementation")
+        Class<?> implementation;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("global.namespace.service.wight.CompositeGet")
+    @Label("Composite Get")
+    @Category("Service Wight")
+    @Description("A product provided by a composite provider")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CompositeGet extends Event {
+
+        @Label("Provider")
+        Class<?> provider;
+
+        @Label("Filter Chain")
+        @Description("The class names of the service filters in the order of application")
+        String filters;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+}
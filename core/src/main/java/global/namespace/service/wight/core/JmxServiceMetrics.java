@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Service metrics which are based on {@link LongAdder}s and published as an MXBean with the object name
+ * {@code global.namespace.service.wight:type=ServiceMetrics}.
+ * Metrics are keyed by class names rather than classes, so they never prevent a class loader from being garbage
+ * collected.
+ * This class is not registered by default.
+ * To enable it, set the system property {@code global.namespace.service.wight.core.ServiceMetrics} to the name of
+ * this class or register it in the service provider configuration file
+ * {@code META-INF/services/global.namespace.service.wight.core.ServiceMetrics}.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class JmxServiceMetrics implements ServiceMetrics, ServiceMetricsMXBean {
+
+    private final ConcurrentMap<String, LongAdder> scanNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> instantiationNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> filterNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> productCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs new service metrics and registers them with the platform MBean server.
+     * If there already is an MBean with the same object name, e.g. because this class has been loaded by multiple
+     * class loaders, then the object name gets qualified with the identity hash code of this object.
+     *
+     * @throws IllegalStateException if registering the MBean fails for some other reason.
+     */
+    public JmxServiceMetrics() {
+        try {
+            final ObjectName name = new ObjectName("global.namespace.service.wight:type=ServiceMetrics");
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(
+                        name + ",id=" + Integer.toHexString(System.identityHashCode(this))));
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void scanned(Class<?> service, int candidates, long nanos) {
+        add(scanNanos, service.getName(), nanos);
+    }
+
+    @Override
+    public void instantiated(Class<?> service, Class<?> implementation, long nanos) {
+        add(instantiationNanos, implementation.getName(), nanos);
+    }
+
+    @Override
+    public void filtered(UnaryOperator<?> filter, long nanos) {
+        filterNanos.computeIfAbsent(filter.getClass().getName(), k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void produced(CompositeProvider<?, ?, ?> provider, long nanos) {
+        add(productCounts, provider.provider().getClass().getName(), 1);
+    }
+
+    private static void add(ConcurrentMap<String, LongAdder> map, String key, long value) {
+        map.computeIfAbsent(key, k -> new LongAdder()).add(value);
+    }
+
+    @Override
+    public Map<String, Long> getScanNanos() {
+        return snapshot(scanNanos, LongAdder::sum);
+    }
+
+    @Override
+    public Map<String, Long> getInstantiationNanos() {
+        return snapshot(instantiationNanos, LongAdder::sum);
+    }
+
+    @Override
+    public Map<String, Long> getFilterCounts() {
+        return snapshot(filterNanos, LatencyHistogram::count);
+    }
+
+    @Override
+    public Map<String, Long> getFilterMedianNanos() {
+        return snapshot(filterNanos, h -> h.percentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getFilter99thPercentileNanos() {
+        return snapshot(filterNanos, h -> h.percentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getProductCounts() {
+        return snapshot(productCounts, LongAdder::sum);
+    }
+
+    private static <V> Map<String, Long> snapshot(Map<String, V> map, ToLongFunction<V> value) {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        map.forEach((k, v) -> snapshot.put(k, value.applyAsLong(v)));
+        return snapshot;
+    }
+
+    @Override
+    public void reset() {
+        scanNanos.clear();
+        instantiationNanos.clear();
+        filterNanos.clear();
+        productCounts.clear();
+    }
+}
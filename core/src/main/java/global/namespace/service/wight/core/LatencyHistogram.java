@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds with buckets of exponentially growing width.
+ * Bucket {@code i} counts the durations {@code d} with {@code 2^(i-1) <= d < 2^i}, so any percentile computed from
+ * this histogram is accurate within a factor of two.
+ *
+ * @author Christian Schlichtherle
+ */
+final class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[64];
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(final long nanos) {
+        buckets[64 - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+    }
+
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile or zero if this histogram is empty.
+     *
+     * @param percentile the percentile in the range from 0 to 100.
+     */
+    long percentile(final double percentile) {
+        final long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i] = buckets[i].sum();
+        }
+        final double rank = total * percentile / 100;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (0 < cumulative && cumulative >= rank) {
+                return (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * An unmodifiable list which creates each element on the first call to {@link #get(int)} and memoizes it.
+ * Each element gets created at most once, even when accessed concurrently.
+ * Because this list is unmodifiable and its elements are memoized, it can be safely shared instead of copied.
+ *
+ * @param <E> the type of the elements.
+ * @author Christian Schlichtherle
+ */
+final class LazyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final List<? extends Supplier<? extends E>> factories;
+    private final AtomicReferenceArray<E> elements;
+
+    LazyList(final List<? extends Supplier<? extends E>> factories) {
+        this.factories = factories;
+        this.elements = new AtomicReferenceArray<>(factories.size());
+    }
+
+    @Override
+    public E get(final int index) {
+        E element = elements.get(index);
+        if (null == element) {
+            synchronized (this) {
+                if (null == (element = elements.get(index))) {
+                    elements.set(index, element = factories.get(index).get());
+                }
+            }
+        }
+        return element;
+    }
+
+    @Override
+    public int size() {
+        return elements.length();
+    }
+
+    /**
+     * Returns a string representation of this list without creating any elements.
+     * Elements which have not been created yet are represented by their factory.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder().append('[');
+        for (int i = 0, n = size(); i < n; i++) {
+            if (0 < i) {
+                sb.append(", ");
+            }
+            final E element = elements.get(i);
+            sb.append(null != element ? element : factories.get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Provides products from a composite provider which gets atomically replaced whenever the service providers or
+ * filters for its service interfaces get relocated by a {@link PluginLocator}.
+ * Each call to {@link #get()} uses the current composite provider, so a product is always provided by a consistent
+ * set of service providers and filters.
+ *
+ * @param <S>  the type of the products to provide.
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see PluginLocator
+ */
+public final class LiveProvider<S, SP extends Supplier<S>, SF extends UnaryOperator<S>> implements Supplier<S> {
+
+    private final Set<String> services;
+    private final Function<ServiceLocator, CompositeProvider<S, SP, SF>> locate;
+
+    private volatile CompositeProvider<S, SP, SF> current;
+
+    LiveProvider(final Set<String> services, final Function<ServiceLocator, CompositeProvider<S, SP, SF>> locate) {
+        this.services = services;
+        this.locate = locate;
+    }
+
+    /**
+     * Returns the names of the service interfaces of this live provider.
+     */
+    Set<String> services() {
+        return services;
+    }
+
+    /**
+     * Returns {@code true} if and only if any of the given names of service interfaces is a service interface of this
+     * live provider.
+     */
+    boolean dependsOnAny(final Set<String> names) {
+        for (String service : services) {
+            if (names.contains(service)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Locates the service providers and filters using the given service locator and replaces the current composite
+     * provider.
+     * If this fails, the current composite provider is retained.
+     */
+    void relocate(final ServiceLocator locator) {
+        current = locate.apply(locator);
+    }
+
+    /**
+     * Returns the current composite provider.
+     * The returned composite provider is not affected by subsequent changes to the plugin directories.
+     */
+    public CompositeProvider<S, SP, SF> current() {
+        return current;
+    }
+
+    /**
+     * Returns a new product from the current composite provider.
+     */
+    @Override
+    public S get() {
+        return current.get();
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+}
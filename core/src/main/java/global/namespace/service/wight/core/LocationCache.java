@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes the lists of service instances located for some service interfaces.
+ * Concurrent calls for the same service interface get collapsed into a single location.
+ * If the location fails, the failure is reported to all waiting callers, but it's not memoized, so that the next call
+ * tries again.
+ *
+ * @author Christian Schlichtherle
+ */
+final class LocationCache {
+
+    private final ConcurrentMap<Class<?>, FutureTask<List<?>>> map = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the memoized list of instances for the given service interface.
+     * If there is none yet, the given locator gets called to locate it.
+     * The returned list must not get modified.
+     */
+    @SuppressWarnings("unchecked")
+    <S> List<S> get(final Class<?> service, final Supplier<List<S>> locator) {
+        FutureTask<List<?>> task = map.get(service);
+        if (null == task) {
+            final FutureTask<List<?>> newTask = new FutureTask<>(locator::get);
+            task = map.putIfAbsent(service, newTask);
+            if (null == task) {
+                (task = newTask).run();
+            }
+        }
+        try {
+            return (List<S>) task.get();
+        } catch (ExecutionException e) {
+            map.remove(service, task);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new ServiceConfigurationError(cause.toString(), cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceConfigurationError("Interrupted while waiting for the location of " + service + ".", e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if a list of instances for the given service interface is memoized or
+     * currently getting located.
+     */
+    boolean contains(Class<?> service) {
+        return map.containsKey(service);
+    }
+
+    /**
+     * Memoizes the given list of instances for the given service interface unless there is already one memoized or
+     * currently getting located.
+     */
+    void putIfAbsent(final Class<?> service, final List<?> instances) {
+        final FutureTask<List<?>> task = new FutureTask<>(() -> instances);
+        task.run();
+        map.putIfAbsent(service, task);
+    }
+
+    void invalidate(Class<?> service) {
+        map.remove(service);
+    }
+
+    void invalidateAll() {
+        map.clear();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A provider of some {@code long} value which is generated from a list of service providers and a list of service
+ * filters.
+ * This is the counterpart of {@link CompositeProvider} for service interfaces which extend {@link LongSupplier} and
+ * {@link LongUnaryOperator}, so that calling {@link #getAsLong()} never boxes the value.
+ *
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see ServiceLocator#longProvider(Class, Class)
+ */
+public final class LongCompositeProvider<SP extends LongSupplier, SF extends LongUnaryOperator>
+        extends PrimitiveCompositeProvider<SP, SF> implements LongSupplier {
+
+    private final LongSupplier product;
+
+    /**
+     * Constructs a {@code long} composite provider.
+     *
+     * @param providers a non-empty list of service providers.
+     *                  Only the first element is used on a call to {@link #getAsLong()}.
+     * @param filters   a (possibly empty) list of service filters.
+     *                  All elements are used in order on a call to {@link #getAsLong()}.
+     */
+    public LongCompositeProvider(final List<SP> providers, final List<SF> filters) {
+        super(providers, filters);
+        this.product = fuse(this.providers.get(0), this.filters);
+    }
+
+    /**
+     * Fuses the given provider and filters into a single provider.
+     *
+     * @see #fuse(List)
+     */
+    private static LongSupplier fuse(final LongSupplier provider, final List<? extends LongUnaryOperator> filters) {
+        if (filters.isEmpty()) {
+            return provider;
+        }
+        final LongUnaryOperator chain = fuse(filters);
+        return () -> chain.applyAsLong(provider.getAsLong());
+    }
+
+    /**
+     * Fuses the given filters into a single filter, just like {@link CompositeProvider#fuse(List)} does.
+     */
+    private static LongUnaryOperator fuse(final List<? extends LongUnaryOperator> filters) {
+        switch (filters.size()) {
+            case 0:
+                return LongUnaryOperator.identity();
+            case 1:
+                return filters.get(0);
+            case 2: {
+                final LongUnaryOperator f0 = filters.get(0), f1 = filters.get(1);
+                return value -> f1.applyAsLong(f0.applyAsLong(value));
+            }
+            case 3: {
+                final LongUnaryOperator f0 = filters.get(0), f1 = filters.get(1), f2 = filters.get(2);
+                return value -> f2.applyAsLong(f1.applyAsLong(f0.applyAsLong(value)));
+            }
+            default: {
+                final LongUnaryOperator head = fuse(filters.subList(0, 3)),
+                        tail = fuse(filters.subList(3, filters.size()));
+                return value -> tail.applyAsLong(head.applyAsLong(value));
+            }
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        return product.getAsLong();
+    }
+}
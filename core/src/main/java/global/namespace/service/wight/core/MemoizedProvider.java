@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A provider which memoizes the product of another provider for some time to live.
+ * Once three quarters of the time to live have elapsed, the next call to {@link #get()} triggers a rebuild of the
+ * product on an executor while still returning the memoized product, so that callers don't block on a rebuild as long
+ * as the product gets requested regularly.
+ * Only if there is no memoized product or it has expired, callers block until a new product has been built.
+ * Concurrent callers get collapsed so that the product gets built only once.
+ * <p>
+ * If a rebuild in the background fails, then the memoized product is retained until it expires and the rebuild gets
+ * retried on the next call to {@link #get()}.
+ * The failure is available from {@link #failure()} until a rebuild succeeds.
+ * If the product expires before that and building it in the foreground fails, too, then the background failure gets
+ * added as a suppressed exception to the foreground failure.
+ *
+ * @param <S> the type of the product.
+ * @author Christian Schlichtherle
+ * @see CompositeProvider#memoized(Duration)
+ */
+public final class MemoizedProvider<S> implements Supplier<S> {
+
+    private final Supplier<S> provider;
+    private final long timeToLive, refreshAfter;
+    private final Executor executor;
+    private final LongSupplier ticker;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Object lock = new Object();
+
+    private volatile Entry<S> entry;
+    private volatile Throwable failure;
+    private volatile long generation;
+
+    MemoizedProvider(final Supplier<S> provider,
+                     final Duration timeToLive,
+                     final Executor executor,
+                     final LongSupplier ticker) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException(timeToLive + " is not positive.");
+        }
+        this.provider = provider;
+        this.timeToLive = timeToLive.toNanos();
+        this.refreshAfter = this.timeToLive / 4 * 3;
+        this.executor = executor;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public S get() {
+        Entry<S> entry = this.entry;
+        if (null != entry) {
+            final long age = ticker.getAsLong() - entry.created;
+            if (age < timeToLive) {
+                if (age >= refreshAfter && refreshing.compareAndSet(false, true)) {
+                    refresh();
+                }
+                return entry.product;
+            }
+        }
+        synchronized (lock) {
+            entry = this.entry;
+            if (null == entry || ticker.getAsLong() - entry.created >= timeToLive) {
+                this.entry = entry = build();
+            }
+            return entry.product;
+        }
+    }
+
+    private Entry<S> build() {
+        final S product;
+        try {
+            product = provider.get();
+        } catch (RuntimeException | Error e) {
+            final Throwable failure = this.failure;
+            if (null != failure && failure != e) {
+                e.addSuppressed(failure);
+            }
+            throw e;
+        }
+        failure = null;
+        return new Entry<>(product, ticker.getAsLong());
+    }
+
+    private void refresh() {
+        final long generation = this.generation;
+        try {
+            executor.execute(() -> {
+                try {
+                    final Entry<S> entry = new Entry<>(provider.get(), ticker.getAsLong());
+                    synchronized (lock) {
+                        if (generation == this.generation) {
+                            this.entry = entry;
+                            failure = null;
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    synchronized (lock) {
+                        if (generation == this.generation) {
+                            failure = e;
+                        }
+                    }
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Returns the failure of the last rebuild in the background, which is empty if there was none or a rebuild has
+     * succeeded since then.
+     */
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure);
+    }
+
+    /**
+     * Discards the memoized product, so that the next call to {@link #get()} builds a new one.
+     * A rebuild which is currently running in the background gets discarded, too.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            generation++;
+            entry = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[provider = " + provider + ", timeToLive = " +
+                Duration.ofNanos(timeToLive) + ']';
+    }
+
+    private static final class Entry<S> {
+
+        final S product;
+        final long created;
+
+        Entry(final S product, final long created) {
+            this.product = product;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+import static global.namespace.service.wight.core.Candidate.DESCENDING_PRIORITY;
+import static java.util.Optional.empty;
+import static java.util.Optional.ofNullable;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Holds the located {@link ServiceMetrics}.
+ * Callers should check {@link #ENABLED} before measuring anything:
+ * Because it's a constant, the JIT compiler eliminates any instrumentation code if it's {@code false}.
+ * <p>
+ * Service metrics which can't get located or instantiated get logged and skipped, so that a broken registration
+ * can't break the service location, too.
+ * If no service metrics remain, then metrics are disabled.
+ *
+ * @author Christian Schlichtherle
+ */
+final class Metrics {
+
+    /**
+     * The located service metrics or a no-op implementation if there are none.
+     */
+    static final ServiceMetrics INSTANCE;
+
+    /**
+     * Whether or not any service metrics have been located.
+     */
+    static final boolean ENABLED;
+
+    static {
+        final List<ServiceMetrics> located = locate();
+        ENABLED = !located.isEmpty();
+        INSTANCE = 1 == located.size() ? located.get(0) : new Composite(located);
+    }
+
+    private Metrics() {
+    }
+
+    private static List<ServiceMetrics> locate() {
+        final Class<ServiceMetrics> service = ServiceMetrics.class;
+        final ClassLoader cl = ofNullable(service.getClassLoader()).orElseGet(ClassLoader::getSystemClassLoader);
+        final List<ServiceMetrics> located = new ArrayList<>();
+        final String name = System.getProperty(service.getName());
+        if (null != name) {
+            instantiate(new Candidate<>(service, name, cl, empty(), empty()), located);
+        } else {
+            final List<Candidate<ServiceMetrics>> candidates;
+            try {
+                candidates = new ServiceIndex(cl).candidates(service);
+            } catch (ServiceConfigurationError | RuntimeException | LinkageError e) {
+                report(service.getName(), e);
+                return located;
+            }
+            candidates.sort(DESCENDING_PRIORITY);
+            for (Candidate<ServiceMetrics> candidate : candidates) {
+                instantiate(candidate, located);
+            }
+        }
+        return located;
+    }
+
+    private static void instantiate(final Candidate<ServiceMetrics> candidate, final List<ServiceMetrics> located) {
+        try {
+            located.add(candidate.instantiate());
+        } catch (ServiceConfigurationError | RuntimeException | LinkageError e) {
+            report(candidate.name(), e);
+        }
+    }
+
+    private static void report(final String name, final Throwable e) {
+        Logger.getLogger(Metrics.class.getName()).log(WARNING, "Ignoring service metrics " + name + ".", e);
+    }
+
+    private static final class Composite implements ServiceMetrics {
+
+        private final ServiceMetrics[] metrics;
+
+        Composite(final List<ServiceMetrics> metrics) {
+            this.metrics = metrics.toArray(new ServiceMetrics[0]);
+        }
+
+        @Override
+        public void scanned(Class<?> service, int candidates, long nanos) {
+            for (ServiceMetrics m : metrics) {
+                m.scanned(service, candidates, nanos);
+            }
+        }
+
+        @Override
+        public void instantiated(Class<?> service, Class<?> implementation, long nanos) {
+            for (ServiceMetrics m : metrics) {
+                m.instantiated(service, implementation, nanos);
+            }
+        }
+
+        @Override
+        public void located(Class<?> service, int candidates, Object chosen, long nanos) {
+            for (ServiceMetrics m : metrics) {
+                m.located(service, candidates, chosen, nanos);
+            }
+        }
+
+        @Override
+        public void filtered(UnaryOperator<?> filter, long nanos) {
+            for (ServiceMetrics m : metrics) {
+                m.filtered(filter, nanos);
+            }
+        }
+
+        @Override
+        public void produced(CompositeProvider<?, ?, ?> provider, long nanos) {
+            for (ServiceMetrics m : metrics) {
+                m.produced(provider, nanos);
+            }
+        }
+    }
+}
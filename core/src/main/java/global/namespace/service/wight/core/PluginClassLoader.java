@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Aggregates the class loaders of some plugin JAR files.
+ * Classes and resources get looked up in the parent class loader first and then in the class loader of each plugin
+ * JAR file in order.
+ * Classes are always defined by the class loader of the plugin JAR file which contains them, so the plugin JAR files
+ * can be replaced individually by creating a new instance of this class.
+ *
+ * @author Christian Schlichtherle
+ */
+final class PluginClassLoader extends ClassLoader {
+
+    private final List<URLClassLoader> plugins;
+
+    PluginClassLoader(final ClassLoader parent, final List<URLClassLoader> plugins) {
+        super(parent);
+        this.plugins = plugins;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        for (URLClassLoader plugin : plugins) {
+            try {
+                return plugin.loadClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    protected URL findResource(final String name) {
+        for (URLClassLoader plugin : plugins) {
+            final URL url = plugin.findResource(name);
+            if (null != url) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(final String name) throws IOException {
+        final List<URL> urls = new ArrayList<>();
+        for (URLClassLoader plugin : plugins) {
+            urls.addAll(Collections.list(plugin.findResources(name)));
+        }
+        return Collections.enumeration(urls);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.Optional.empty;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Locates services in the JAR files in some plugin directories and keeps the located service providers and filters
+ * up to date when JAR files get added, replaced or removed.
+ * Use {@link ServiceLocator#plugins(Path...)} to create an instance of this class.
+ * <p>
+ * Each JAR file gets its own class loader, which is a child of the class loader of the service locator, so plugins
+ * cannot see each other's classes.
+ * To find the service interfaces which are declared in a JAR file, only its central directory gets read into a heap
+ * buffer, so the JAR file doesn't get locked.
+ * The results are shared by all plugin locators and cached by the path, size and last modification time of each JAR
+ * file, so an unchanged JAR file doesn't get read again.
+ * A JAR file gets copied to a temporary directory and gets its class loader only once a live provider for any of its
+ * service interfaces has been requested, so JAR files without any service interfaces never get copied.
+ * Copying the JAR files avoids locking them and allows replacing them in place.
+ * <p>
+ * A background thread watches the plugin directories.
+ * When a JAR file gets added, replaced or removed, only the {@link LiveProvider}s for the service interfaces which are
+ * declared in the {@code META-INF/services} directory of this JAR file get relocated, and their composite providers
+ * get atomically replaced.
+ * All other live providers are not affected.
+ * <p>
+ * If relocating a live provider fails, e.g. because the last JAR file with an implementation of its service provider
+ * interface has been removed, then the live provider retains its current composite provider and the error gets passed
+ * to the uncaught exception handler of the background thread.
+ * The class loader of a replaced or removed JAR file gets closed only once no live provider uses it anymore.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class PluginLocator implements AutoCloseable {
+
+    private static final long QUIET_MILLIS = 100;
+    private static final ZipDirectory ZIPS = new ZipDirectory();
+
+    private final ClassLoader parent;
+    private final boolean lazy;
+    private final List<Path> directories;
+    private final Path shadows;
+    private final WatchService watcher;
+    private final Map<Path, Plugin> plugins = new LinkedHashMap<>();
+    private final Map<LiveProvider<?, ?, ?>, List<Plugin>> providers = new WeakHashMap<>();
+    private final Set<Plugin> retired = new LinkedHashSet<>();
+
+    private int copies;
+    private volatile boolean closed;
+
+    PluginLocator(final ClassLoader parent, final boolean lazy, final List<Path> directories) {
+        this.parent = parent;
+        this.lazy = lazy;
+        this.directories = directories;
+        try {
+            this.shadows = Files.createTempDirectory("service-wight-plugins");
+            this.watcher = FileSystems.getDefault().newWatchService();
+            for (Path directory : directories) {
+                directory.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        refresh();
+        final Thread thread = new Thread(this::watch, "service-wight-plugins");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns a live provider of some service.
+     *
+     * @param <S>      the type of the service.
+     * @param <SP>     the type of the service providers.
+     * @param provider the interface class of the locatable service providers.
+     * @return A new live provider for some service.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <S, SP extends Supplier<S>>
+    LiveProvider<S, SP, ? extends UnaryOperator<S>> provider(Class<SP> provider) {
+        return provider(provider, Optional.<Class<UnaryOperator<S>>>empty());
+    }
+
+    /**
+     * Returns a live provider of some service.
+     *
+     * @param <S>      the type of the service.
+     * @param <SP>     the type of the service providers.
+     * @param <SF>     the type of the service filters.
+     * @param provider the interface class of the locatable service providers.
+     * @param filter   the interface class of the locatable service filters.
+     * @return A new live provider for some service.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <S, SP extends Supplier<S>, SF extends UnaryOperator<S>>
+    LiveProvider<S, SP, SF> provider(Class<SP> provider, Class<SF> filter) {
+        return provider(provider, Optional.of(filter));
+    }
+
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private synchronized <S, SP extends Supplier<S>, SF extends UnaryOperator<S>>
+    LiveProvider<S, SP, SF> provider(final Class<SP> provider, final Optional<Class<SF>> filter) {
+        checkOpen();
+        final Set<String> services = new HashSet<>();
+        services.add(provider.getName());
+        filter.ifPresent(f -> services.add(f.getName()));
+        final LiveProvider<S, SP, SF> live = new LiveProvider<>(services, l -> l.provider(provider, filter));
+        final List<Plugin> used = plugins(services);
+        live.relocate(locator(used));
+        providers.put(live, used);
+        return live;
+    }
+
+    /**
+     * Scans the plugin directories for added, replaced or removed JAR files and relocates the service providers and
+     * filters of the live providers for the service interfaces which are declared in these JAR files.
+     * This method gets called by a background thread whenever the plugin directories change, but it may also be called
+     * explicitly, e.g. if the file system doesn't support watching directories.
+     * <p>
+     * A JAR file which cannot be read, e.g. because it's still being written, is ignored until it can be read.
+     *
+     * @throws UncheckedIOException      if scanning a plugin directory fails for some reason.
+     * @throws ServiceConfigurationError if relocating a live provider fails for some reason.
+     *                                   Relocating the other live providers is not affected by this.
+     * @throws IllegalStateException     if this plugin locator has been closed.
+     */
+    public synchronized void refresh() {
+        checkOpen();
+        final Map<Path, Plugin> next = new LinkedHashMap<>();
+        final Set<Plugin> obsolete = new LinkedHashSet<>();
+        final Set<String> changed = new HashSet<>();
+        for (Path path : jars()) {
+            final Plugin current = plugins.get(path);
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                continue;
+            }
+            if (null != current && current.isUpToDate(attributes)) {
+                next.put(path, current);
+                continue;
+            }
+            final Optional<Plugin> loaded = load(path, attributes);
+            if (loaded.isPresent()) {
+                next.put(path, loaded.get());
+                changed.addAll(loaded.get().services);
+                if (null != current) {
+                    obsolete.add(current);
+                    changed.addAll(current.services);
+                }
+            } else if (null != current) {
+                next.put(path, current);
+            }
+        }
+        for (Map.Entry<Path, Plugin> entry : plugins.entrySet()) {
+            if (!next.containsKey(entry.getKey())) {
+                obsolete.add(entry.getValue());
+                changed.addAll(entry.getValue().services);
+                ZIPS.evict(entry.getKey());
+            }
+        }
+        if (changed.isEmpty() && obsolete.isEmpty()) {
+            return;
+        }
+        plugins.clear();
+        plugins.putAll(next);
+        RuntimeException runtimeException = null;
+        Error error = null;
+        for (Map.Entry<LiveProvider<?, ?, ?>, List<Plugin>> entry : providers.entrySet()) {
+            final LiveProvider<?, ?, ?> live = entry.getKey();
+            if (live.dependsOnAny(changed)) {
+                try {
+                    final List<Plugin> used = plugins(live.services());
+                    live.relocate(locator(used));
+                    entry.setValue(used);
+                } catch (RuntimeException e) {
+                    if (null == runtimeException) {
+                        runtimeException = e;
+                    } else {
+                        runtimeException.addSuppressed(e);
+                    }
+                } catch (ServiceConfigurationError | LinkageError e) {
+                    if (null == error) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        retire(obsolete);
+        if (null != error) {
+            throw error;
+        } else if (null != runtimeException) {
+            throw runtimeException;
+        }
+    }
+
+    private List<Path> jars() {
+        final List<Path> jars = new ArrayList<>();
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                        .sorted()
+                        .forEach(jars::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return jars;
+    }
+
+    private Optional<Plugin> load(final Path path, final BasicFileAttributes attributes) {
+        final Set<String> services = new HashSet<>();
+        try {
+            for (String entry : ZIPS.entries(path, attributes)) {
+                if (entry.startsWith(ServiceIndex.SERVICES)) {
+                    services.add(entry.substring(ServiceIndex.SERVICES.length()));
+                }
+            }
+        } catch (IOException e) {
+            return empty();
+        }
+        return Optional.of(new Plugin(path, attributes, services));
+    }
+
+    /**
+     * Closes the given obsolete plugins and any previously retired plugins unless they are still used by a live
+     * provider, e.g. because relocating it has failed.
+     * The plugins which are still used get retired until a later call to this method.
+     */
+    private void retire(final Set<Plugin> obsolete) {
+        retired.addAll(obsolete);
+        final Set<Plugin> used = new HashSet<>();
+        providers.values().forEach(used::addAll);
+        for (Iterator<Plugin> it = retired.iterator(); it.hasNext(); ) {
+            final Plugin plugin = it.next();
+            if (!used.contains(plugin)) {
+                plugin.close();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the plugins which declare any of the given service interfaces.
+     */
+    private List<Plugin> plugins(final Set<String> services) {
+        final List<Plugin> plugins = new ArrayList<>();
+        for (Plugin plugin : this.plugins.values()) {
+            if (!Collections.disjoint(plugin.services, services)) {
+                plugins.add(plugin);
+            }
+        }
+        return plugins;
+    }
+
+    /**
+     * Returns a new service locator for the given plugins.
+     * The class loaders of these plugin JAR files get created on demand.
+     */
+    private ServiceLocator locator(final List<Plugin> plugins) {
+        final List<URLClassLoader> loaders = new ArrayList<>();
+        for (Plugin plugin : plugins) {
+            try {
+                loaders.add(plugin.loader());
+            } catch (IOException e) {
+                throw new ServiceConfigurationError("Cannot load plugin JAR file " + plugin.path + ".", e);
+            }
+        }
+        final ServiceLocator locator = new ServiceLocator(new PluginClassLoader(parent, loaders));
+        return lazy ? locator.lazy() : locator;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while (null != (key = watcher.poll(QUIET_MILLIS, MILLISECONDS)));
+                try {
+                    refresh();
+                } catch (RuntimeException | Error e) {
+                    if (closed) {
+                        return;
+                    }
+                    final Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ignored) {
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("This plugin locator has been closed.");
+        }
+    }
+
+    /**
+     * Stops watching the plugin directories and closes the class loaders of all plugin JAR files.
+     * Live providers retain their current composite provider, but they may fail to load any further classes from the
+     * plugin JAR files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        watcher.close();
+        plugins.values().forEach(Plugin::close);
+        plugins.clear();
+        retired.forEach(Plugin::close);
+        retired.clear();
+        providers.clear();
+        Files.deleteIfExists(shadows);
+    }
+
+    private final class Plugin {
+
+        final Path path;
+        final long size, lastModified;
+        final Set<String> services;
+
+        Path copy;
+        URLClassLoader loader;
+
+        Plugin(final Path path, final BasicFileAttributes attributes, final Set<String> services) {
+            this.path = path;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.services = services;
+        }
+
+        boolean isUpToDate(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+
+        URLClassLoader loader() throws IOException {
+            if (null == loader) {
+                final Path copy = shadows.resolve(++copies + "-" + path.getFileName());
+                try {
+                    Files.copy(path, copy, REPLACE_EXISTING);
+                    loader = new URLClassLoader(new URL[]{copy.toUri().toURL()}, parent);
+                } catch (IOException e) {
+                    Files.deleteIfExists(copy);
+                    throw e;
+                }
+                this.copy = copy;
+            }
+            return loader;
+        }
+
+        void close() {
+            try {
+                if (null != loader) {
+                    loader.close();
+                    Files.deleteIfExists(copy);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
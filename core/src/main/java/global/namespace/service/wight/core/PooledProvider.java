@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded pool of the products of another provider.
+ * Products get borrowed as {@linkplain Lease leases} which return their product to the pool when they get closed, so
+ * the idiomatic usage is a try-with-resources statement:
+ * <pre>{@code
+ * try (PooledProvider.Lease<MessageDigest> lease = pool.borrow()) {
+ *     MessageDigest digest = lease.get();
+ *     ...
+ * }
+ * }</pre>
+ * <p>
+ * The idle products are kept in a fixed number of slots which get claimed and released with compare-and-set
+ * operations, so neither borrowing nor returning a product ever blocks.
+ * Each thread starts probing the slots at a different index in order to reduce contention.
+ * If no idle product is available, a new product gets built.
+ * If all slots are occupied when returning a product, the product gets discarded.
+ * Each call to {@link #borrow()} returns a new lease, so closing a lease more than once never returns a product which
+ * has been borrowed again in the meantime.
+ * Apart from this small lease, borrowing and returning a pooled product doesn't allocate.
+ * <p>
+ * When a product gets returned, the reset operator gets applied to it.
+ * It may reset the state of the product and return it, return another product to the pool instead or return
+ * {@code null} to discard the product, e.g. because it's broken.
+ * Products which have been idle for longer than the maximum idle time get discarded when they would get borrowed or
+ * on a call to {@link #evictIdle()}.
+ * The cleanup hook gets called for each discarded product.
+ *
+ * @param <S> the type of the products.
+ * @author Christian Schlichtherle
+ * @see CompositeProvider#pooled(int)
+ */
+public final class PooledProvider<S> implements AutoCloseable {
+
+    private final Supplier<S> provider;
+    private final UnaryOperator<S> reset;
+    private final long maxIdle;
+    private final Consumer<? super S> cleanup;
+    private final AtomicReferenceArray<Entry<S>> slots;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    private volatile boolean closed;
+
+    PooledProvider(final Supplier<S> provider,
+                   final int capacity,
+                   final UnaryOperator<S> reset,
+                   final Duration maxIdle,
+                   final Consumer<? super S> cleanup) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(capacity + " is not positive.");
+        }
+        if (maxIdle.isNegative() || maxIdle.isZero()) {
+            throw new IllegalArgumentException(maxIdle + " is not positive.");
+        }
+        this.provider = provider;
+        this.reset = reset;
+        this.maxIdle = maxIdle.toNanos();
+        this.cleanup = cleanup;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    private int probe() {
+        final long id = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+        return (int) ((id ^ id >>> 32) & Integer.MAX_VALUE) % slots.length();
+    }
+
+    /**
+     * Borrows an idle product or builds a new one if there is none.
+     *
+     * @throws IllegalStateException if this pool has been closed.
+     */
+    public Lease<S> borrow() {
+        if (closed) {
+            throw new IllegalStateException("This pooled provider has been closed.");
+        }
+        final int capacity = slots.length();
+        final long now = System.nanoTime();
+        for (int i = 0, index = probe(); i < capacity; i++, index = index + 1 == capacity ? 0 : index + 1) {
+            final Entry<S> entry = slots.get(index);
+            if (null != entry && slots.compareAndSet(index, entry, null)) {
+                if (now - entry.released >= maxIdle) {
+                    evictions.increment();
+                    cleanup.accept(entry.product);
+                } else {
+                    hits.increment();
+                    return new Lease<>(this, entry);
+                }
+            }
+        }
+        misses.increment();
+        return new Lease<>(this, new Entry<>(provider.get()));
+    }
+
+    private void release(final Entry<S> entry) {
+        final S product = entry.product;
+        final S reset;
+        try {
+            reset = this.reset.apply(product);
+        } catch (RuntimeException | Error e) {
+            cleanup.accept(product);
+            throw e;
+        }
+        if (null == reset) {
+            cleanup.accept(product);
+            return;
+        }
+        entry.product = reset;
+        entry.released = System.nanoTime();
+        if (!closed) {
+            final int capacity = slots.length();
+            for (int i = 0, index = probe(); i < capacity; i++, index = index + 1 == capacity ? 0 : index + 1) {
+                if (null == slots.get(index) && slots.compareAndSet(index, null, entry)) {
+                    if (closed && slots.compareAndSet(index, entry, null)) {
+                        cleanup.accept(reset);
+                    }
+                    return;
+                }
+            }
+        }
+        cleanup.accept(reset);
+    }
+
+    /**
+     * Discards all idle products which have been idle for longer than the maximum idle time.
+     *
+     * @return the number of discarded products.
+     */
+    public int evictIdle() {
+        final long now = System.nanoTime();
+        int evicted = 0;
+        for (int index = 0; index < slots.length(); index++) {
+            final Entry<S> entry = slots.get(index);
+            if (null != entry && now - entry.released >= maxIdle && slots.compareAndSet(index, entry, null)) {
+                evictions.increment();
+                cleanup.accept(entry.product);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns the number of calls to {@link #borrow()} which have been served with an idle product.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #borrow()} which had to build a new product.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of idle products which have been discarded because they have been idle for longer than the
+     * maximum idle time.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the ratio of {@linkplain #hits() hits} to all calls to {@link #borrow()} or zero if there have been no
+     * calls yet.
+     */
+    public double hitRate() {
+        final long hit = hits.sum(), total = hit + misses.sum();
+        return 0 == total ? 0 : (double) hit / total;
+    }
+
+    /**
+     * Discards all idle products.
+     * Products which are currently borrowed get discarded when they are returned.
+     * Subsequent calls to {@link #borrow()} fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (int index = 0; index < slots.length(); index++) {
+            final Entry<S> entry = slots.getAndSet(index, null);
+            if (null != entry) {
+                cleanup.accept(entry.product);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[provider = " + provider + ", capacity = " + slots.length() + ']';
+    }
+
+    /**
+     * A lease of a product from a {@link PooledProvider}.
+     * Closing the lease returns the product to the pool.
+     * A lease must not be used by more than one thread at a time and must not be used after it has been closed.
+     *
+     * @param <S> the type of the product.
+     */
+    public static final class Lease<S> implements Supplier<S>, AutoCloseable {
+
+        private final PooledProvider<S> pool;
+        private final Entry<S> entry;
+        private final S product;
+
+        private boolean borrowed = true;
+
+        Lease(final PooledProvider<S> pool, final Entry<S> entry) {
+            this.pool = pool;
+            this.entry = entry;
+            this.product = entry.product;
+        }
+
+        /**
+         * Returns the borrowed product.
+         */
+        @Override
+        public S get() {
+            return product;
+        }
+
+        /**
+         * Returns the borrowed product to the pool.
+         * Subsequent calls to this method have no effect, even if the product has been borrowed again in the meantime.
+         */
+        @Override
+        public void close() {
+            if (borrowed) {
+                borrowed = false;
+                pool.release(entry);
+            }
+        }
+    }
+
+    /**
+     * A product in the pool and the time when it has been released.
+     * An entry gets reused when its product gets borrowed again.
+     */
+    private static final class Entry<S> {
+
+        S product;
+        long released;
+
+        Entry(final S product) {
+            this.product = product;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The common base class of the composite providers of primitive values.
+ * It holds the lists of service providers and service filters, while each subclass fuses them into a single provider
+ * of its primitive type, just like {@link CompositeProvider} does.
+ *
+ * @param <SP> the type of the service providers.
+ * @param <SF> the type of the service filters.
+ * @author Christian Schlichtherle
+ * @see IntCompositeProvider
+ * @see LongCompositeProvider
+ * @see DoubleCompositeProvider
+ */
+abstract class PrimitiveCompositeProvider<SP, SF> {
+
+    final List<SP> providers;
+    final List<SF> filters;
+
+    PrimitiveCompositeProvider(final List<SP> providers, final List<SF> filters) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        this.providers = copy(providers);
+        this.filters = copy(filters);
+    }
+
+    private static <E> List<E> copy(List<E> list) {
+        return list instanceof LazyList ? list : new ArrayList<>(list);
+    }
+
+    /**
+     * Returns a protective copy of the list of service providers.
+     * The list is never empty.
+     * If the service providers have been located by a {@linkplain ServiceLocator#lazy() lazy} service locator, then
+     * calling this method instantiates all of them.
+     */
+    public List<SP> providers() {
+        return new ArrayList<>(providers);
+    }
+
+    /**
+     * Returns a protective copy of the list of service filters.
+     * The list may be empty.
+     */
+    public List<SF> filters() {
+        return new ArrayList<>(filters);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[providers = " + providers + ", filters = " + filters + ']';
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Selects the service provider to use for each product of a {@link CompositeProvider}.
+ * Use {@link CompositeProvider#select(ProviderSelector)} in order to apply a selector to a composite provider.
+ * <p>
+ * A selector gets called once per composite provider in order to create a provider which delegates each call to one
+ * of the located service providers.
+ * Any state for the selection, e.g. counters or timings, belongs to the returned provider, not to the selector, so
+ * one selector can get shared by many composite providers.
+ * None of the built-in selectors uses locks or shared counters, and only the least latency selector writes to shared
+ * memory, for a small random sample of calls, so they add no contention on the hot path.
+ *
+ * @author Christian Schlichtherle
+ */
+public interface ProviderSelector {
+
+    /**
+     * Returns a provider which delegates each call to one of the given service providers.
+     *
+     * @param <S>       the type of the products.
+     * @param providers the non-empty list of service providers, sorted by descending priority.
+     */
+    <S> Supplier<S> select(List<? extends Supplier<S>> providers);
+
+    /**
+     * Returns a selector which always selects the service provider with the highest priority.
+     * This is the default.
+     */
+    static ProviderSelector priorityFirst() {
+        return ProviderSelectors.PRIORITY_FIRST;
+    }
+
+    /**
+     * Returns a selector which selects the service providers in turn.
+     * Each thread cycles through the service providers on its own, starting at a random index, so there is no shared
+     * counter to contend for.
+     */
+    static ProviderSelector roundRobin() {
+        return ProviderSelectors.ROUND_ROBIN;
+    }
+
+    /**
+     * Returns a selector which selects a service provider at random with a probability proportional to its weight.
+     * The weight of a service provider is one plus its {@link ServiceImplementation#priority()}, or one if its
+     * priority is negative.
+     */
+    static ProviderSelector weighted() {
+        return ProviderSelectors.WEIGHTED;
+    }
+
+    /**
+     * Returns a selector which selects the service provider with the least latency.
+     * The latency of each service provider is an exponentially weighted moving average of the duration of its calls.
+     * In order to keep the timings up to date without adding contention, only a small random sample of calls gets
+     * timed, and the sampled calls get spread evenly across all service providers.
+     */
+    static ProviderSelector leastLatency() {
+        return ProviderSelectors.LEAST_LATENCY;
+    }
+}
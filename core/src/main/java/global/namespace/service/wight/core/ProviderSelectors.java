@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import static global.namespace.service.wight.core.Candidate.priorityOf;
+
+/**
+ * Provides the built-in {@link ProviderSelector}s.
+ *
+ * @author Christian Schlichtherle
+ */
+final class ProviderSelectors {
+
+    static final ProviderSelector PRIORITY_FIRST = new PriorityFirst();
+    static final ProviderSelector ROUND_ROBIN = new RoundRobin();
+    static final ProviderSelector WEIGHTED = new Weighted();
+    static final ProviderSelector LEAST_LATENCY = new LeastLatency();
+
+    private ProviderSelectors() {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> Supplier<S>[] toArray(List<? extends Supplier<S>> providers) {
+        return (Supplier<S>[]) providers.toArray(new Supplier<?>[0]);
+    }
+
+    private static final class PriorityFirst implements ProviderSelector {
+
+        @Override
+        public <S> Supplier<S> select(List<? extends Supplier<S>> providers) {
+            return providers.get(0);
+        }
+
+        @Override
+        public String toString() {
+            return "priorityFirst";
+        }
+    }
+
+    private static final class RoundRobin implements ProviderSelector {
+
+        @Override
+        public <S> Supplier<S> select(final List<? extends Supplier<S>> providers) {
+            final Supplier<S>[] array = toArray(providers);
+            if (1 == array.length) {
+                return array[0];
+            }
+            final AtomicInteger counter = new AtomicInteger(ThreadLocalRandom.current().nextInt(array.length));
+            return () -> array[Math.floorMod(counter.getAndIncrement(), array.length)].get();
+        }
+
+        @Override
+        public String toString() {
+            return "roundRobin";
+        }
+    }
+
+    private static final class Weighted implements ProviderSelector {
+
+        @Override
+        public <S> Supplier<S> select(final List<? extends Supplier<S>> providers) {
+            final Supplier<S>[] array = toArray(providers);
+            if (1 == array.length) {
+                return array[0];
+            }
+            final long[] cumulative = new long[array.length];
+            long total = 0;
+            for (int i = 0; i < array.length; i++) {
+                cumulative[i] = total += Math.max(0, priorityOf(array[i].getClass())) + 1L;
+            }
+            final long bound = total;
+            return () -> {
+                final int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextLong(bound));
+                return array[0 <= index ? index + 1 : -index - 1].get();
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "weighted";
+        }
+    }
+
+    private static final class LeastLatency implements ProviderSelector {
+
+        /** Times one in this many calls. */
+        private static final int SAMPLE_RATE = 32;
+
+        @Override
+        public <S> Supplier<S> select(final List<? extends Supplier<S>> providers) {
+            final Supplier<S>[] array = toArray(providers);
+            if (1 == array.length) {
+                return array[0];
+            }
+            final AtomicLongArray latencies = new AtomicLongArray(array.length);
+            final AtomicInteger best = new AtomicInteger();
+            return () -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (0 != random.nextInt(SAMPLE_RATE)) {
+                    return array[best.get()].get();
+                }
+                final int index = random.nextInt(array.length);
+                final long start = System.nanoTime();
+                final S product = array[index].get();
+                final long elapsed = Math.max(1, System.nanoTime() - start);
+                final long average = latencies.get(index);
+                latencies.lazySet(index, 0 == average ? elapsed : average + (elapsed - average) / 4);
+                final int fastest = fastest(latencies);
+                if (fastest != best.get()) {
+                    best.lazySet(fastest);
+                }
+                return product;
+            };
+        }
+
+        /**
+         * Returns the index of the least latency or zero if no latency has been measured yet.
+         * A latency of zero means that it has not been measured yet.
+         */
+        private static int fastest(final AtomicLongArray latencies) {
+            int fastest = 0;
+            long least = Long.MAX_VALUE;
+            for (int i = 0; i < latencies.length(); i++) {
+                final long latency = latencies.get(i);
+                if (0 != latency && latency < least) {
+                    fastest = i;
+                    least = latency;
+                }
+            }
+            return fastest;
+        }
+
+        @Override
+        public String toString() {
+            return "leastLatency";
+        }
+    }
+}
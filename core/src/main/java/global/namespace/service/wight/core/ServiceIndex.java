@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Reads the service provider configuration files in {@code META-INF/services} and the index files in
+ * {@code META-INF/service-wight} which are visible to some class loader.
+ * <p>
+ * An index file is generated by the annotation processor for the {@code @ServiceImplementation} annotation.
+ * For each service implementation class, it contains a line with the binary name of the class, its priority and
+ * optionally the binary name of a generated factory class, separated by whitespace.
+ * Index files are only used to look up priorities and factories, so a missing or stale index file can never add or
+ * remove any service implementation: The service provider configuration files are always the authority for this.
+ * In order to keep the format extensible, any further columns are ignored and so are malformed lines, e.g. lines with
+ * an illegal priority, so that the priority of the class falls back to its {@code @ServiceImplementation} annotation.
+ *
+ * @author Christian Schlichtherle
+ */
+final class ServiceIndex {
+
+    static final String SERVICES = "META-INF/services/";
+
+    static final String INDEX = "META-INF/service-wight/";
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    private final ClassLoader classLoader;
+
+    ServiceIndex(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the list of candidate implementations of the given service in class path order.
+     * Duplicate names are removed.
+     *
+     * @throws ServiceConfigurationError if reading a configuration file fails for some reason.
+     */
+    <S> List<Candidate<S>> candidates(final Class<S> service) {
+        final Set<String> names = new LinkedHashSet<>();
+        read(service, SERVICES + service.getName(), (line, tokens) -> {
+            if (1 != tokens.length || !binaryName(tokens[0])) {
+                throw new ServiceConfigurationError(service.getName() + ": Illegal provider-class name: " + line);
+            }
+            names.add(tokens[0]);
+        });
+        final List<Candidate<S>> candidates = new ArrayList<>(names.size());
+        if (!names.isEmpty()) {
+            final Map<String, Integer> priorities = new HashMap<>();
+            final Map<String, String> factories = new HashMap<>();
+            index(service, priorities, factories);
+            for (String name : names) {
+                candidates.add(new Candidate<>(service, name, classLoader,
+                        ofNullable(priorities.get(name)), ofNullable(factories.get(name))));
+            }
+        }
+        return candidates;
+    }
+
+    private void index(final Class<?> service,
+                       final Map<String, Integer> priorities,
+                       final Map<String, String> factories) {
+        read(service, INDEX + service.getName() + INDEX_SUFFIX, (line, tokens) -> {
+            if (2 > tokens.length || !binaryName(tokens[0])) {
+                return;
+            }
+            final Integer priority;
+            try {
+                priority = Integer.valueOf(tokens[1]);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            if (null == priorities.putIfAbsent(tokens[0], priority) && 3 <= tokens.length && binaryName(tokens[2])) {
+                factories.put(tokens[0], tokens[2]);
+            }
+        });
+    }
+
+    private void read(final Class<?> service, final String resource, final BiConsumer<String, String[]> consumer) {
+        try {
+            final Enumeration<URL> urls = classLoader.getResources(resource);
+            while (urls.hasMoreElements()) {
+                final URLConnection connection = urls.nextElement().openConnection();
+                connection.setUseCaches(false); // don't keep replaced plugin JAR files open
+                try (BufferedReader reader =
+                             new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF_8))) {
+                    for (String line; null != (line = reader.readLine()); ) {
+                        final int comment = line.indexOf('#');
+                        final String trimmed = (0 <= comment ? line.substring(0, comment) : line).trim();
+                        if (!trimmed.isEmpty()) {
+                            consumer.accept(trimmed, trimmed.split("\\s+"));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ServiceConfigurationError(service.getName() + ": Error reading " + resource, e);
+        }
+    }
+
+    private static boolean binaryName(final String name) {
+        for (String part : name.split("\\.", -1)) {
+            if (part.isEmpty() || !Character.isJavaIdentifierStart(part.codePointAt(0))) {
+                return false;
+            }
+            for (int i = Character.charCount(part.codePointAt(0)); i < part.length(); ) {
+                final int cp = part.codePointAt(i);
+                if (!Character.isJavaIdentifierPart(cp)) {
+                    return false;
+                }
+                i += Character.charCount(cp);
+            }
+        }
+        return true;
+    }
+}
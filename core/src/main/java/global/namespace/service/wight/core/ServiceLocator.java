@@ -7,11 +7,17 @@ package global.namespace.service.wight.core;
 import global.namespace.service.wight.annotation.ServiceImplementation;
 
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.function.Supplier;
-import java.util.function.UnaryOperator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.*;
 
-import static java.util.Comparator.comparingInt;
+import static global.namespace.service.wight.core.Candidate.ASCENDING_PRIORITY;
+import static global.namespace.service.wight.core.Candidate.DESCENDING_PRIORITY;
+import static java.util.Arrays.asList;
 import static java.util.Optional.*;
 
 /**
@@ -28,17 +34,20 @@ import static java.util.Optional.*;
  * the given <i>service provider</i> class.
  * If this yields no results, a {@link ServiceConfigurationError} is thrown.
  * <p>
- * Otherwise the classes with the names contained in these resources get loaded and instantiated by calling their
- * public no-argument constructor.
- * Next, the instances are sorted by descending {@linkplain ServiceImplementation#priority() priority}.
+ * Otherwise the classes with the names contained in these resources get sorted by descending
+ * {@linkplain ServiceImplementation#priority() priority}.
+ * The priority of each class is looked up in the index files {@code "META-INF/service-wight/"} plus the name of the
+ * given service provider class plus {@code ".idx"}, which are generated by the annotation processor for the
+ * {@link ServiceImplementation} annotation.
+ * Only if a class is missing from these index files, it gets loaded to inspect its annotation.
+ * Next, the classes get loaded and instantiated in order by calling their public no-argument constructor.
  * Only the first instance (i.e. the one with the highest priority) is used for providing a product.
  * <p>
  * Next, the classpath is searched again for any resources with the name {@code "META-INF/services/"} plus the name of
  * the given <i>service filter</i> class.
- * If this yields some results, the classes with the names contained in these resources get loaded and instantiated by
- * calling their public no-argument constructor.
- * Next, the instances get sorted by ascending {@linkplain ServiceImplementation#priority() priority} for subsequent
- * use.
+ * If this yields some results, the classes with the names contained in these resources get sorted by ascending
+ * {@linkplain ServiceImplementation#priority() priority} in the same way and then loaded and instantiated in order for
+ * subsequent use.
  * <p>
  * Finally, a composite provider gets created from the lists of product providers and filters.
  * The composite provider uses only the first product provider, but all product filters.
@@ -50,21 +59,10 @@ import static java.util.Optional.*;
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public final class ServiceLocator {
 
-    private static final Comparator<Supplier<?>> PROVIDER_COMPARATOR =
-            comparingInt((Supplier<?> provider) ->
-                    ofNullable(provider.getClass().getDeclaredAnnotation(ServiceImplementation.class))
-                            .map(ServiceImplementation::priority)
-                            .orElse(0)
-            ).reversed();
-
-    private static final Comparator<UnaryOperator<?>> FILTER_COMPARATOR =
-            comparingInt(mapping ->
-                    ofNullable(mapping.getClass().getDeclaredAnnotation(ServiceImplementation.class))
-                            .map(ServiceImplementation::priority)
-                            .orElse(0)
-            );
-
     private final Optional<ClassLoader> classLoader;
+    private final ServiceIndex index;
+    private final Optional<LocationCache> providerCache, filterCache;
+    private final boolean lazy;
 
     /**
      * Constructs a new service locator using the current thread's context classloader.
@@ -77,7 +75,93 @@ public final class ServiceLocator {
      * Constructs a new service locator using the given class loader.
      */
     public ServiceLocator(ClassLoader cl) {
-        this.classLoader = ofNullable(cl);
+        this(ofNullable(cl), false, false);
+    }
+
+    private ServiceLocator(final Optional<ClassLoader> classLoader, final boolean cached, final boolean lazy) {
+        this.classLoader = classLoader;
+        this.index = new ServiceIndex(classLoader.orElseGet(ClassLoader::getSystemClassLoader));
+        this.providerCache = cached ? of(new LocationCache()) : empty();
+        this.filterCache = cached ? of(new LocationCache()) : empty();
+        this.lazy = lazy;
+    }
+
+    /**
+     * Returns a service locator which uses the same class loader as this service locator, but memoizes the located
+     * service providers and filters per service interface.
+     * The returned service locator is thread-safe:
+     * If multiple threads concurrently call a {@code provider} method for the same service interface for the first
+     * time, then only one of them locates the service providers or filters while the others wait for the result.
+     * <p>
+     * Note that the returned service locator shares the located service providers and filters between all composite
+     * providers it returns, so they should be stateless or at least thread-safe.
+     * <p>
+     * The memoized service providers and filters are held by the returned service locator, not by some static field,
+     * so they are eligible for garbage collection once the returned service locator is.
+     * This avoids the class loader leaks which would result from a static cache because the located service providers
+     * and filters always strongly reference their class loader.
+     *
+     * @return A memoizing service locator, which may be this service locator if it's already memoizing.
+     */
+    public ServiceLocator cached() {
+        return providerCache.isPresent() ? this : new ServiceLocator(classLoader, true, lazy);
+    }
+
+    /**
+     * Returns a service locator which uses the same class loader as this service locator, but defers the
+     * instantiation of located service providers until they are actually used.
+     * The returned service locator sorts the located service providers by their priority without instantiating them
+     * and only instantiates the service provider with the highest priority when creating a composite provider.
+     * Any other service provider gets instantiated on demand when calling {@link CompositeProvider#providers()}.
+     * Consequently, errors when instantiating these service providers are deferred until then, too.
+     * <p>
+     * Service filters are always instantiated when creating a composite provider because all of them are required
+     * for providing a product.
+     *
+     * @return A lazy service locator, which may be this service locator if it's already lazy.
+     */
+    public ServiceLocator lazy() {
+        return lazy ? this : new ServiceLocator(classLoader, providerCache.isPresent(), true);
+    }
+
+    /**
+     * Returns a plugin locator which watches the given plugin directories for JAR files and locates services in these
+     * JAR files and in the class loader of this service locator.
+     * The class loader of this service locator is the parent of the class loader for each JAR file.
+     * If this service locator is {@linkplain #lazy() lazy}, then so is the returned plugin locator.
+     * The returned plugin locator does not memoize the located service providers or filters because each
+     * {@link LiveProvider} keeps its own.
+     * <p>
+     * The returned plugin locator needs to get {@linkplain PluginLocator#close() closed} in order to stop watching the
+     * plugin directories.
+     *
+     * @param directories the plugin directories.
+     * @return A new plugin locator.
+     * @throws java.io.UncheckedIOException if watching or scanning a plugin directory fails for some reason.
+     */
+    public PluginLocator plugins(Path... directories) {
+        return new PluginLocator(classLoader.orElseGet(ClassLoader::getSystemClassLoader), lazy, asList(directories));
+    }
+
+    /**
+     * Discards any memoized service providers or filters for the given service interface, so that the next call to a
+     * {@code provider} method for it locates them again.
+     * This is a no-op if this service locator is not {@linkplain #cached() memoizing}.
+     *
+     * @param service the interface class of the locatable service providers or filters.
+     */
+    public void invalidate(final Class<?> service) {
+        providerCache.ifPresent(c -> c.invalidate(service));
+        filterCache.ifPresent(c -> c.invalidate(service));
+    }
+
+    /**
+     * Discards all memoized service providers and filters.
+     * This is a no-op if this service locator is not {@linkplain #cached() memoizing}.
+     */
+    public void invalidateAll() {
+        providerCache.ifPresent(LocationCache::invalidateAll);
+        filterCache.ifPresent(LocationCache::invalidateAll);
     }
 
     /**
@@ -110,39 +194,355 @@ public final class ServiceLocator {
         return provider(provider, of(filter));
     }
 
-    private <S, SP extends Supplier<S>, SF extends UnaryOperator<S>>
+    /**
+     * Returns a provider of some service which defers the location of its service providers until it's used for the
+     * first time.
+     * Unlike a {@linkplain #lazy() lazy} service locator, this doesn't even scan the class path until then.
+     *
+     * @param <S>      the type of the service.
+     * @param <SP>     the type of the service providers.
+     * @param provider the interface class of the locatable service providers.
+     * @return A new deferred provider for some service.
+     */
+    public <S, SP extends Supplier<S>>
+    DeferredProvider<S, SP, ? extends UnaryOperator<S>> lazyProvider(Class<SP> provider) {
+        return new DeferredProvider<>(() -> provider(provider, Optional.<Class<UnaryOperator<S>>>empty()));
+    }
+
+    /**
+     * Returns a provider of some service which defers the location of its service providers and filters until it's
+     * used for the first time.
+     * Unlike a {@linkplain #lazy() lazy} service locator, this doesn't even scan the class path until then.
+     * Location errors get thrown on the first call to {@link DeferredProvider#get()} instead of this method.
+     *
+     * @param <S>      the type of the service.
+     * @param <SP>     the type of the service providers.
+     * @param <SF>     the type of the service filters.
+     * @param provider the interface class of the locatable service providers.
+     * @param filter   the interface class of the locatable service filters.
+     * @return A new deferred provider for some service.
+     */
+    public <S, SP extends Supplier<S>, SF extends UnaryOperator<S>>
+    DeferredProvider<S, SP, SF> lazyProvider(Class<SP> provider, Class<SF> filter) {
+        return new DeferredProvider<>(() -> provider(provider, of(filter)));
+    }
+
+    /**
+     * Returns a provider of some {@code int} value.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param provider the interface class of the locatable service providers.
+     * @return A new {@code int} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends IntSupplier>
+    IntCompositeProvider<SP, ? extends IntUnaryOperator> intProvider(Class<SP> provider) {
+        return provider(provider, Optional.<Class<IntUnaryOperator>>empty(), IntCompositeProvider::new);
+    }
+
+    /**
+     * Returns a provider of some {@code int} value.
+     * The service providers and filters get located with the same priority rules as for
+     * {@link #provider(Class, Class)}.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param <SF>     the type of the service filters.
+     * @param provider the interface class of the locatable service providers.
+     * @param filter   the interface class of the locatable service filters.
+     * @return A new {@code int} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends IntSupplier, SF extends IntUnaryOperator>
+    IntCompositeProvider<SP, SF> intProvider(Class<SP> provider, Class<SF> filter) {
+        return provider(provider, of(filter), IntCompositeProvider::new);
+    }
+
+    /**
+     * Returns a provider of some {@code long} value.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param provider the interface class of the locatable service providers.
+     * @return A new {@code long} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends LongSupplier>
+    LongCompositeProvider<SP, ? extends LongUnaryOperator> longProvider(Class<SP> provider) {
+        return provider(provider, Optional.<Class<LongUnaryOperator>>empty(), LongCompositeProvider::new);
+    }
+
+    /**
+     * Returns a provider of some {@code long} value.
+     * The service providers and filters get located with the same priority rules as for
+     * {@link #provider(Class, Class)}.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param <SF>     the type of the service filters.
+     * @param provider the interface class of the locatable service providers.
+     * @param filter   the interface class of the locatable service filters.
+     * @return A new {@code long} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends LongSupplier, SF extends LongUnaryOperator>
+    LongCompositeProvider<SP, SF> longProvider(Class<SP> provider, Class<SF> filter) {
+        return provider(provider, of(filter), LongCompositeProvider::new);
+    }
+
+    /**
+     * Returns a provider of some {@code double} value.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param provider the interface class of the locatable service providers.
+     * @return A new {@code double} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends DoubleSupplier>
+    DoubleCompositeProvider<SP, ? extends DoubleUnaryOperator> doubleProvider(Class<SP> provider) {
+        return provider(provider, Optional.<Class<DoubleUnaryOperator>>empty(), DoubleCompositeProvider::new);
+    }
+
+    /**
+     * Returns a provider of some {@code double} value.
+     * The service providers and filters get located with the same priority rules as for
+     * {@link #provider(Class, Class)}.
+     *
+     * @param <SP>     the type of the service providers.
+     * @param <SF>     the type of the service filters.
+     * @param provider the interface class of the locatable service providers.
+     * @param filter   the interface class of the locatable service filters.
+     * @return A new {@code double} composite provider.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <SP extends DoubleSupplier, SF extends DoubleUnaryOperator>
+    DoubleCompositeProvider<SP, SF> doubleProvider(Class<SP> provider, Class<SF> filter) {
+        return provider(provider, of(filter), DoubleCompositeProvider::new);
+    }
+
+    /**
+     * Returns the reducer with the highest priority, e.g. for aggregating the products of all service providers using
+     * {@link CompositeProvider#fanOut(BinaryOperator, java.time.Duration)}.
+     * The reducers get located with the same priority rules as service providers.
+     *
+     * @param <S>     the type of the products.
+     * @param <SR>    the type of the reducers.
+     * @param reducer the interface class of the locatable reducers.
+     * @return The located reducer with the highest priority.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public <S, SR extends BinaryOperator<S>> SR reducer(Class<SR> reducer) {
+        return this.<SR>providers(reducer).get(0);
+    }
+
+    /**
+     * Returns a map of providers for the given service provider interfaces.
+     * The service providers for each interface get located and instantiated in parallel on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @param interfaces the interface classes of the locatable service providers.
+     * @return A new map with a composite provider for each given interface class, in the given order.
+     *         The composite providers have no service filters.
+     * @throws IllegalArgumentException  if any given class is not a subtype of {@link Supplier}.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public Map<Class<?>, CompositeProvider<?, ?, ?>> locateAll(Class<?>... interfaces) {
+        return locateAll(ForkJoinPool.commonPool(), interfaces);
+    }
+
+    /**
+     * Returns a map of providers for the given service provider interfaces.
+     * The service providers for each interface get located and instantiated in parallel on the given executor.
+     *
+     * @param executor   the executor for locating the service providers.
+     * @param interfaces the interface classes of the locatable service providers.
+     * @return A new map with a composite provider for each given interface class, in the given order.
+     *         The composite providers have no service filters.
+     * @throws IllegalArgumentException  if any given class is not a subtype of {@link Supplier}.
+     * @throws ServiceConfigurationError if loading or instantiating a located class fails for some reason.
+     */
+    public Map<Class<?>, CompositeProvider<?, ?, ?>> locateAll(final Executor executor, final Class<?>... interfaces) {
+        final Map<Class<?>, CompletableFuture<CompositeProvider<?, ?, ?>>> futures = new LinkedHashMap<>();
+        for (Class<?> iface : interfaces) {
+            if (!Supplier.class.isAssignableFrom(iface)) {
+                throw new IllegalArgumentException(iface + " is not a subtype of " + Supplier.class + ".");
+            }
+            @SuppressWarnings("unchecked") final Class<Supplier<Object>> provider = (Class<Supplier<Object>>) iface;
+            futures.computeIfAbsent(iface, i -> CompletableFuture.supplyAsync(() -> provider(provider), executor));
+        }
+        final Map<Class<?>, CompositeProvider<?, ?, ?>> providers = new LinkedHashMap<>();
+        try {
+            futures.forEach((iface, future) -> providers.put(iface, future.join()));
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        return providers;
+    }
+
+    /**
+     * Locates and instantiates the service providers or filters for the given interfaces in the background, so that
+     * subsequent calls to the {@code provider} methods reuse them instead of locating them again.
+     * The service providers or filters for each interface get located and instantiated in parallel on virtual threads
+     * if the runtime supports them or on a bounded pool of daemon threads otherwise.
+     *
+     * @param interfaces the interface classes of the locatable service providers or filters.
+     * @return A future which completes when the service providers or filters for all given interfaces have been
+     *         instantiated.
+     * @throws IllegalStateException if this service locator is not {@linkplain #cached() memoizing}.
+     * @see #warmUp(Executor, Class[])
+     */
+    public CompletableFuture<Void> warmUp(Class<?>... interfaces) {
+        return warmUp(DefaultExecutor.INSTANCE, interfaces);
+    }
+
+    /**
+     * Locates and instantiates the service providers or filters for the given interfaces in the background, so that
+     * subsequent calls to the {@code provider} methods reuse them instead of locating them again.
+     * Each interface which is a subtype of {@link UnaryOperator}, {@link IntUnaryOperator},
+     * {@link LongUnaryOperator} or {@link DoubleUnaryOperator} is treated as the interface of service filters, any
+     * other interface as the interface of service providers.
+     * <p>
+     * The service providers or filters for each interface get located in parallel on the given executor.
+     * Then each of them gets instantiated in parallel on the given executor, too, so that slow constructors overlap.
+     * No thread of the given executor ever waits for another task, so the executor may be bounded.
+     * Interfaces whose service providers or filters have already been memoized or are currently getting located get
+     * skipped without submitting any task to the given executor, so the returned future doesn't wait for them.
+     * <p>
+     * If locating or instantiating any service provider or filter fails, then the returned future completes
+     * exceptionally with a {@link CompletionException} wrapping the {@link ServiceConfigurationError}.
+     * Nothing gets memoized for the affected interface then, so the next call to a {@code provider} method for it
+     * tries again.
+     *
+     * @param executor   the executor for locating and instantiating the service providers or filters.
+     * @param interfaces the interface classes of the locatable service providers or filters.
+     * @return A future which completes when the service providers or filters for all given interfaces have been
+     *         instantiated.
+     * @throws IllegalStateException if this service locator is not {@linkplain #cached() memoizing}.
+     */
+    public CompletableFuture<Void> warmUp(final Executor executor, final Class<?>... interfaces) {
+        if (!providerCache.isPresent()) {
+            throw new IllegalStateException("This service locator is not memoizing - call cached() first.");
+        }
+        return CompletableFuture.allOf(new LinkedHashSet<>(asList(interfaces))
+                .stream()
+                .map(service -> warmUp(executor, service))
+                .toArray(CompletableFuture<?>[]::new));
+    }
+
+    private CompletableFuture<?> warmUp(final Executor executor, final Class<?> service) {
+        final boolean filter = isFilter(service);
+        final LocationCache cache = (filter ? filterCache : providerCache).get();
+        if (cache.contains(service)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture
+                .supplyAsync(() -> filter
+                        ? candidatesOf(service, ASCENDING_PRIORITY)
+                        : providerFactories(service), executor)
+                .thenCompose(factories -> {
+                    final List<CompletableFuture<?>> instances = new ArrayList<>(factories.size());
+                    for (Supplier<?> factory : factories) {
+                        instances.add(CompletableFuture.supplyAsync(factory, executor));
+                    }
+                    return CompletableFuture
+                            .allOf(instances.toArray(new CompletableFuture<?>[0]))
+                            .thenRun(() -> {
+                                final List<Object> list = new ArrayList<>(instances.size());
+                                for (CompletableFuture<?> instance : instances) {
+                                    list.add(instance.join());
+                                }
+                                cache.putIfAbsent(service, list);
+                            });
+                });
+    }
+
+    private static boolean isFilter(Class<?> service) {
+        return UnaryOperator.class.isAssignableFrom(service) ||
+                IntUnaryOperator.class.isAssignableFrom(service) ||
+                LongUnaryOperator.class.isAssignableFrom(service) ||
+                DoubleUnaryOperator.class.isAssignableFrom(service);
+    }
+
+    <S, SP extends Supplier<S>, SF extends UnaryOperator<S>>
     CompositeProvider<S, SP, SF> provider(Class<SP> factory, Optional<Class<SF>> filter) {
-        return new CompositeProvider<>(providers(factory),
-                filter.map(this::filters).orElseGet(Collections::emptyList));
+        return provider(factory, filter, CompositeProvider::new);
     }
 
-    private <S, SP extends Supplier<S>> List<SP> providers(final Class<? extends SP> service) {
-        final List<SP> providers = new ArrayList<>();
-        instancesOf(service).forEach(providers::add);
-        providers.sort(PROVIDER_COMPARATOR);
-        instanceOf(service).map(s -> {
-            providers.add(0, s);
-            return null;
-        });
-        if (providers.isEmpty()) {
+    private <SP, SF, C> C provider(final Class<SP> factory,
+                                   final Optional<Class<SF>> filter,
+                                   final BiFunction<List<SP>, List<SF>, C> composer) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        final List<SP> providers = providers(factory);
+        final SP chosen = providers.get(0); // fail fast even if the providers get instantiated lazily
+        final C composite =
+                composer.apply(providers, filter.map(this::<SF>filters).orElseGet(Collections::emptyList));
+        if (Metrics.ENABLED) {
+            Metrics.INSTANCE.located(factory, providers.size(), chosen, System.nanoTime() - start);
+        }
+        return composite;
+    }
+
+    private <SP> List<SP> providers(final Class<? extends SP> service) {
+        return providerCache.isPresent()
+                ? providerCache.get().get(service, () -> locateProviders(service))
+                : locateProviders(service);
+    }
+
+    private <SP> List<SP> locateProviders(final Class<? extends SP> service) {
+        final List<Supplier<? extends SP>> factories = providerFactories(service);
+        return lazy ? new LazyList<>(factories) : instancesOf(factories);
+    }
+
+    private <SP> List<Supplier<? extends SP>> providerFactories(final Class<? extends SP> service) {
+        final List<? extends Candidate<? extends SP>> candidates = candidatesOf(service, DESCENDING_PRIORITY);
+        final List<Supplier<? extends SP>> factories = new ArrayList<>(candidates);
+        instanceOf(service, candidates).ifPresent(s -> factories.add(0, () -> s));
+        if (factories.isEmpty()) {
             throw new ServiceConfigurationError("No providers located for " + service + ".");
         }
-        return providers;
+        return factories;
     }
 
-    private <S, SF extends UnaryOperator<S>> List<SF> filters(final Class<? extends SF> service) {
-        final List<SF> mappings = new ArrayList<>();
-        instancesOf(service).forEach(mappings::add);
-        mappings.sort(FILTER_COMPARATOR);
-        return mappings;
+    private <SF> List<SF> filters(final Class<? extends SF> service) {
+        return filterCache.isPresent()
+                ? filterCache.get().get(service, () -> locateFilters(service))
+                : locateFilters(service);
     }
 
-    private <S> ServiceLoader<S> instancesOf(Class<S> service) {
-        return ServiceLoader.load(service, classLoader.orElse(null));
+    private <SF> List<SF> locateFilters(final Class<? extends SF> service) {
+        return instancesOf(candidatesOf(service, ASCENDING_PRIORITY));
+    }
+
+    private <S> List<? extends Candidate<? extends S>> candidatesOf(final Class<? extends S> service,
+                                                                  final Comparator<Candidate<?>> order) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        final List<? extends Candidate<? extends S>> candidates = index.candidates(service);
+        candidates.sort(order);
+        if (Metrics.ENABLED) {
+            Metrics.INSTANCE.scanned(service, candidates.size(), System.nanoTime() - start);
+        }
+        return candidates;
     }
 
-    private <S> Optional<S> instanceOf(final Class<S> service) {
+    private static <S> List<S> instancesOf(final List<? extends Supplier<? extends S>> factories) {
+        final List<S> instances = new ArrayList<>(factories.size());
+        for (Supplier<? extends S> factory : factories) {
+            instances.add(factory.get());
+        }
+        return instances;
+    }
+
+    private <S> Optional<S> instanceOf(final Class<? extends S> service,
+                                       final List<? extends Candidate<? extends S>> candidates) {
         return ofNullable(System.getProperty(service.getName())).map(name -> {
+            for (Candidate<? extends S> candidate : candidates) {
+                if (name.equals(candidate.name())) {
+                    return candidate.get(); // use the generated factory, if any
+                }
+            }
             try {
                 return service.cast(Class
                         .forName(name, false, classLoader.orElse(null))
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A listener for the timing of the service location process and the products of composite providers.
+ * <p>
+ * Implementations are located once when the {@link ServiceLocator} or {@link CompositeProvider} class is initialized,
+ * using the class loader of this interface:
+ * If the system property with the name of this interface is set, then it's supposed to name an implementation class.
+ * Otherwise, the classes named in the service provider configuration files {@code "META-INF/services/"} plus the name
+ * of this interface are used.
+ * If multiple implementations are located, then all of them get notified in order of descending priority.
+ * <p>
+ * If no implementation is located, then the service location process and the composite providers are not
+ * instrumented at all, so there is effectively zero overhead.
+ * <p>
+ * All methods get called synchronously by the thread performing the reported operation, so implementations need to
+ * be thread-safe and fast, and they should never throw an exception.
+ * All durations are in nanoseconds.
+ *
+ * @author Christian Schlichtherle
+ * @see JmxServiceMetrics
+ */
+public interface ServiceMetrics {
+
+    /**
+     * Called after scanning the class path for the implementations of the given service interface.
+     *
+     * @param service    the service interface.
+     * @param candidates the number of implementation classes found.
+     * @param nanos      the duration of the scan.
+     */
+    default void scanned(Class<?> service, int candidates, long nanos) {
+    }
+
+    /**
+     * Called after instantiating an implementation class of the given service interface.
+     *
+     * @param service        the service interface.
+     * @param implementation the implementation class.
+     * @param nanos          the duration of the constructor call.
+     */
+    default void instantiated(Class<?> service, Class<?> implementation, long nanos) {
+    }
+
+    /**
+     * Called after locating the service providers for a new composite provider.
+     *
+     * @param service    the service provider interface.
+     * @param candidates the number of located service providers.
+     * @param chosen     the chosen service provider.
+     * @param nanos      the duration of the location process, including the location of the service filters.
+     */
+    default void located(Class<?> service, int candidates, Object chosen, long nanos) {
+    }
+
+    /**
+     * Called after a service filter of a composite provider has been applied to a product.
+     *
+     * @param filter the service filter.
+     * @param nanos  the duration of the call to {@link UnaryOperator#apply(Object)}.
+     */
+    default void filtered(UnaryOperator<?> filter, long nanos) {
+    }
+
+    /**
+     * Called after a composite provider has provided a product.
+     *
+     * @param provider the composite provider.
+     * @param nanos    the duration of the call to {@link CompositeProvider#get()}.
+     */
+    default void produced(CompositeProvider<?, ?, ?> provider, long nanos) {
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link JmxServiceMetrics}.
+ * All durations are in nanoseconds.
+ *
+ * @author Christian Schlichtherle
+ */
+public interface ServiceMetricsMXBean {
+
+    /**
+     * Returns the total duration of scanning the class path, keyed by the name of the service interface.
+     */
+    Map<String, Long> getScanNanos();
+
+    /**
+     * Returns the total duration of instantiating service implementations, keyed by the name of the implementation
+     * class.
+     */
+    Map<String, Long> getInstantiationNanos();
+
+    /**
+     * Returns the number of applications of service filters, keyed by the name of the filter class.
+     */
+    Map<String, Long> getFilterCounts();
+
+    /**
+     * Returns the median duration of applying service filters, keyed by the name of the filter class.
+     * The values are accurate within a factor of two.
+     */
+    Map<String, Long> getFilterMedianNanos();
+
+    /**
+     * Returns the 99th percentile of the duration of applying service filters, keyed by the name of the filter
+     * class.
+     * The values are accurate within a factor of two.
+     */
+    Map<String, Long> getFilter99thPercentileNanos();
+
+    /**
+     * Returns the number of products provided by composite providers, keyed by the name of the class of the service
+     * provider used by the composite provider.
+     */
+    Map<String, Long> getProductCounts();
+
+    /**
+     * Resets all metrics.
+     */
+    void reset();
+}
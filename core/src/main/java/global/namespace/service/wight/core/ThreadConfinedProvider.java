@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Confines the products of another provider to threads, so that products which are expensive to build but not
+ * thread-safe, e.g. message digests or formatters, can get reused.
+ * A product gets passed to an action by calling {@link #apply(Function)} or {@link #accept(Consumer)}.
+ * <p>
+ * On a platform thread, the product gets built on the first call and is then reused by all subsequent calls on the
+ * same thread.
+ * On a virtual thread, caching a product per thread would waste a lot of memory because virtual threads are cheap
+ * and short-lived, so the product gets borrowed from a shared {@link PooledProvider} instead and returned to it when
+ * the action terminates.
+ * The pool is bounded, so if it's full, the returned product gets cleaned up instead.
+ * <p>
+ * The cleanup hook gets called for each product which gets discarded, that is, on a call to {@link #remove()} or
+ * {@link #close()} or when a product gets returned to a full pool.
+ * The products of terminated threads get cleaned up whenever a new product gets built.
+ *
+ * @param <S> the type of the products.
+ * @author Christian Schlichtherle
+ * @see CompositeProvider#perThread()
+ */
+public final class ThreadConfinedProvider<S> implements AutoCloseable {
+
+    private static final int POOL_SIZE = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    private static final MethodHandle IS_VIRTUAL = isVirtual();
+
+    private final Supplier<S> provider;
+    private final Consumer<? super S> cleanup;
+    private final ThreadLocal<S> local = new ThreadLocal<>();
+    private final ConcurrentMap<Thread, S> products = new ConcurrentHashMap<>();
+    private final PooledProvider<S> pool;
+
+    private volatile boolean closed;
+
+    ThreadConfinedProvider(final Supplier<S> provider, final Consumer<? super S> cleanup) {
+        this.provider = provider;
+        this.cleanup = cleanup;
+        this.pool = new PooledProvider<>(provider, POOL_SIZE, UnaryOperator.identity(), CompositeProvider.MAX_DURATION,
+                cleanup);
+    }
+
+    private static MethodHandle isVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtual(final Thread thread) {
+        if (null == IS_VIRTUAL) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Applies the given action to the product which is confined to the current thread and returns its result.
+     * The product must not escape the action.
+     *
+     * @param <R>    the type of the result.
+     * @param action the action to apply.
+     * @throws IllegalStateException if this provider has been closed.
+     */
+    public <R> R apply(final Function<? super S, ? extends R> action) {
+        checkOpen();
+        final Thread thread = Thread.currentThread();
+        if (isVirtual(thread)) {
+            try (PooledProvider.Lease<S> lease = pool.borrow()) {
+                return action.apply(lease.get());
+            }
+        } else {
+            return action.apply(product(thread));
+        }
+    }
+
+    /**
+     * Passes the product which is confined to the current thread to the given action.
+     * The product must not escape the action.
+     *
+     * @param action the action to call.
+     * @throws IllegalStateException if this provider has been closed.
+     */
+    public void accept(final Consumer<? super S> action) {
+        apply(product -> {
+            action.accept(product);
+            return null;
+        });
+    }
+
+    private S product(final Thread thread) {
+        S product = local.get();
+        if (null == product) {
+            sweep();
+            product = provider.get();
+            local.set(product);
+            products.put(thread, product);
+            if (closed && products.remove(thread, product)) {
+                local.remove();
+                cleanup.accept(product);
+                throw closed();
+            }
+        }
+        return product;
+    }
+
+    private void sweep() {
+        for (Map.Entry<Thread, S> entry : products.entrySet()) {
+            if (!entry.getKey().isAlive() && products.remove(entry.getKey(), entry.getValue())) {
+                cleanup.accept(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the product which is confined to the current thread and passes it to the cleanup hook.
+     * The next call on the current thread builds a new product.
+     * This is a no-op on a virtual thread.
+     */
+    public void remove() {
+        final S product = local.get();
+        if (null != product) {
+            local.remove();
+            if (products.remove(Thread.currentThread(), product)) {
+                cleanup.accept(product);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw closed();
+        }
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("This thread confined provider has been closed.");
+    }
+
+    /**
+     * Passes all products which are confined to threads or idle in the shared pool to the cleanup hook.
+     * Products which are currently borrowed from the shared pool get cleaned up when they are returned.
+     * Subsequent calls to {@link #apply(Function)} or {@link #accept(Consumer)} fail with an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : products.keySet()) {
+            final S product = products.remove(thread);
+            if (null != product) {
+                cleanup.accept(product);
+            }
+        }
+        pool.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[provider = " + provider + ']';
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipException;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Lists the service provider configuration files and index files in ZIP files, e.g. JAR files.
+ * Only the central directory at the end of each ZIP file gets read, so no entry data gets read or inflated, and only
+ * the names of the matching entries get decoded.
+ * The central directory gets read into a heap buffer rather than memory-mapped because a mapped file stays locked on
+ * some platforms until the mapping gets garbage collected, and accessing the mapping of a file which gets truncated
+ * concurrently may fail with an {@link InternalError}.
+ * The results are cached by path, size and last modification time.
+ *
+ * @author Christian Schlichtherle
+ */
+final class ZipDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_SIZE = 46;
+
+    private static final byte[][] PREFIXES = {
+            ServiceIndex.SERVICES.getBytes(US_ASCII),
+            ServiceIndex.INDEX.getBytes(US_ASCII),
+    };
+
+    private final ConcurrentMap<Path, Listing> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the names of the entries in the given ZIP file which are service provider configuration files in
+     * {@code META-INF/services/} or index files in {@code META-INF/service-wight/}.
+     *
+     * @param zip        the path of the ZIP file.
+     * @param attributes the attributes of the ZIP file, which are used to validate the cache.
+     * @throws IOException if the ZIP file cannot be read or is not a valid ZIP file, e.g. because it's still being
+     *                     written.
+     */
+    List<String> entries(final Path zip, final BasicFileAttributes attributes) throws IOException {
+        final Listing cached = cache.get(zip);
+        if (null != cached && cached.isUpToDate(attributes)) {
+            return cached.entries;
+        }
+        final List<String> entries = unmodifiableList(scan(zip));
+        cache.put(zip, new Listing(attributes, entries));
+        return entries;
+    }
+
+    /**
+     * Removes the cached entries of the given ZIP file.
+     */
+    void evict(Path zip) {
+        cache.remove(zip);
+    }
+
+    private static List<String> scan(final Path zip) throws IOException {
+        try (FileChannel channel = FileChannel.open(zip, READ)) {
+            final long size = channel.size();
+            final int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_SIZE);
+            final ByteBuffer tail = read(channel, size - tailSize, tailSize);
+            int eocd = tailSize - EOCD_SIZE;
+            while (0 <= eocd && EOCD_SIGNATURE != tail.getInt(eocd)) {
+                eocd--;
+            }
+            if (0 > eocd) {
+                throw new ZipException(zip + ": No end of central directory record.");
+            }
+            long count = tail.getShort(eocd + 10) & 0xffffL;
+            long cenSize = tail.getInt(eocd + 12) & 0xffffffffL;
+            long cenOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+            if (0xffffL == count || 0xffffffffL == cenSize || 0xffffffffL == cenOffset) {
+                final int locator = eocd - ZIP64_LOCATOR_SIZE;
+                if (0 > locator || ZIP64_LOCATOR_SIGNATURE != tail.getInt(locator)) {
+                    throw new ZipException(zip + ": No ZIP64 end of central directory locator.");
+                }
+                final long offset = tail.getLong(locator + 8);
+                if (0 > offset || offset + ZIP64_EOCD_SIZE > size) {
+                    throw new ZipException(zip + ": Invalid ZIP64 end of central directory locator.");
+                }
+                final ByteBuffer zip64 = read(channel, offset, ZIP64_EOCD_SIZE);
+                if (ZIP64_EOCD_SIGNATURE != zip64.getInt(0)) {
+                    throw new ZipException(zip + ": No ZIP64 end of central directory record.");
+                }
+                count = zip64.getLong(32);
+                cenSize = zip64.getLong(40);
+                cenOffset = zip64.getLong(48);
+            }
+            if (0 > cenOffset || 0 > cenSize || cenSize > Integer.MAX_VALUE || cenOffset + cenSize > size) {
+                throw new ZipException(zip + ": Invalid central directory.");
+            }
+            final ByteBuffer cen = read(channel, cenOffset, (int) cenSize);
+            final List<String> entries = new ArrayList<>();
+            for (int position = 0; 0 < count--; ) {
+                if (position + CEN_SIZE > cenSize || CEN_SIGNATURE != cen.getInt(position)) {
+                    throw new ZipException(zip + ": Invalid central directory entry.");
+                }
+                final int nameLength = cen.getShort(position + 28) & 0xffff;
+                final int extraLength = cen.getShort(position + 30) & 0xffff;
+                final int commentLength = cen.getShort(position + 32) & 0xffff;
+                final int name = position + CEN_SIZE;
+                position = name + nameLength + extraLength + commentLength;
+                if (position > cenSize) {
+                    throw new ZipException(zip + ": Invalid central directory entry.");
+                }
+                if (matches(cen, name, nameLength) && '/' != cen.get(name + nameLength - 1)) {
+                    final byte[] bytes = new byte[nameLength];
+                    for (int i = 0; i < nameLength; i++) {
+                        bytes[i] = cen.get(name + i);
+                    }
+                    entries.add(new String(bytes, UTF_8));
+                }
+            }
+            return entries;
+        }
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (0 > channel.read(buffer, position + buffer.position())) {
+                throw new EOFException();
+            }
+        }
+        return buffer;
+    }
+
+    private static boolean matches(final ByteBuffer cen, final int name, final int nameLength) {
+        outer:
+        for (byte[] prefix : PREFIXES) {
+            if (prefix.length < nameLength) {
+                for (int i = 0; i < prefix.length; i++) {
+                    if (prefix[i] != cen.get(name + i)) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Listing {
+
+        final long size, lastModified;
+        final List<String> entries;
+
+        Listing(final BasicFileAttributes attributes, final List<String> entries) {
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.entries = entries;
+        }
+
+        boolean isUpToDate(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
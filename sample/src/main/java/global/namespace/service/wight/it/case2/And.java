@@ -0,0 +1,10 @@
+package global.namespace.service.wight.it.case2;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+@ServiceImplementation
+public final class And implements Conjunction {
+
+    @Override
+    public String apply(String left, String right) { return left + " and " + right; }
+}
@@ -0,0 +1,8 @@
+package global.namespace.service.wight.it.case2;
+
+import global.namespace.service.wight.annotation.ServiceInterface;
+
+import java.util.function.BinaryOperator;
+
+@ServiceInterface
+public interface Conjunction extends BinaryOperator<String> { }
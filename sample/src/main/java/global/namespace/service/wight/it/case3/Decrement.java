@@ -0,0 +1,10 @@
+package global.namespace.service.wight.it.case3;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+@ServiceImplementation(priority = 10)
+public final class Decrement implements Throttle {
+
+    @Override
+    public int applyAsInt(int limit) { return limit - 1; }
+}
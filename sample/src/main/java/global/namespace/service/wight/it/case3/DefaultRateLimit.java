@@ -0,0 +1,10 @@
+package global.namespace.service.wight.it.case3;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+@ServiceImplementation
+public class DefaultRateLimit implements RateLimit {
+
+    @Override
+    public int getAsInt() { return 100; }
+}
@@ -0,0 +1,10 @@
+package global.namespace.service.wight.it.case3;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+@ServiceImplementation
+public final class Halve implements Throttle {
+
+    @Override
+    public int applyAsInt(int limit) { return limit / 2; }
+}
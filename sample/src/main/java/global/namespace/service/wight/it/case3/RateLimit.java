@@ -0,0 +1,8 @@
+package global.namespace.service.wight.it.case3;
+
+import global.namespace.service.wight.annotation.ServiceInterface;
+
+import java.util.function.IntSupplier;
+
+@ServiceInterface
+public interface RateLimit extends IntSupplier { }
@@ -0,0 +1,21 @@
+package global.namespace.service.wight.it.case4;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ServiceImplementation
+public class ConstructorTrace implements Trace {
+
+    private final List<String> callers = new ArrayList<>();
+
+    public ConstructorTrace() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            callers.add(element.getClassName());
+        }
+    }
+
+    @Override
+    public List<String> get() { return callers; }
+}
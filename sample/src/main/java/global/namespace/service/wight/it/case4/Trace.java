@@ -0,0 +1,9 @@
+package global.namespace.service.wight.it.case4;
+
+import global.namespace.service.wight.annotation.ServiceInterface;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+@ServiceInterface
+public interface Trace extends Supplier<List<String>> { }
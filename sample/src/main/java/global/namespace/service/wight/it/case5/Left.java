@@ -0,0 +1,6 @@
+package global.namespace.service.wight.it.case5;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+
+@ServiceImplementation
+public class Left extends Party { }
@@ -0,0 +1,29 @@
+package global.namespace.service.wight.it.case5;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public abstract class Party implements Rendezvous {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+    private static final CountDownLatch arrivals = new CountDownLatch(2);
+
+    private final boolean met;
+
+    Party() {
+        instances.incrementAndGet();
+        arrivals.countDown();
+        try {
+            met = arrivals.await(10, SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static int instances() { return instances.get(); }
+
+    @Override
+    public Boolean get() { return met; }
+}
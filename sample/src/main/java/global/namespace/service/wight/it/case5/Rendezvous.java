@@ -0,0 +1,9 @@
+package global.namespace.service.wight.it.case5;
+
+import global.namespace.service.wight.annotation.ServiceInterface;
+
+import java.util.function.Supplier;
+
+/** Returns {@code true} if and only if the constructor of this instance has met the constructor of another one. */
+@ServiceInterface
+public interface Rendezvous extends Supplier<Boolean> { }
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.it
+
+import global.namespace.service.wight.core.{BatchUnaryOperator, CompositeProvider, DoubleCompositeProvider,
+  IntCompositeProvider, LongCompositeProvider, ProviderSelector, ServiceLocator}
+import global.namespace.service.wight.it.case2.{Conjunction, Subject}
+import global.namespace.service.wight.it.CompositeProviderSpec._
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+
+import java.lang.management.ManagementFactory
+import java.time.Duration
+import java.util.Collections.singletonList
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicReference}
+import java.util.function.{DoubleSupplier, DoubleUnaryOperator, IntSupplier, IntUnaryOperator, LongSupplier,
+  LongUnaryOperator, Supplier, UnaryOperator}
+import java.util.{ArrayDeque, Arrays, Collections, Optional, List => JList}
+import scala.jdk.CollectionConverters._
+import scala.util.Try
+
+/** @author Christian Schlichtherle */
+class CompositeProviderSpec extends AnyWordSpec {
+
+  "A composite provider" should {
+    "apply all filters in order" in {
+      val provider = composite(new Counter, (1 to 5).map(i => increment(i)): _*)
+      provider.get shouldBe 16
+    }
+
+    "provide its product asynchronously" in {
+      val provider = composite(new Counter, (1 to 5).map(i => increment(i)): _*)
+      provider.getAsync.get shouldBe 16
+      provider.getAsync((_: Runnable).run()).get shouldBe 17
+      val caller = Thread.currentThread
+      val threads = new ConcurrentLinkedQueue[Thread]
+      val recorder: Filter = i => { threads.add(Thread.currentThread); i }
+      composite(new Counter, recorder).getAsync.get shouldBe 1
+      threads.asScala.toList should not contain caller
+    }
+
+    "provide a batch of products" in {
+      val batches = new AtomicInteger
+      val batchFilter = new BatchUnaryOperator[Integer] {
+
+        override def apply(i: Integer): Integer = i * 10
+
+        override def applyAll(operands: JList[Integer]): JList[Integer] = {
+          batches.incrementAndGet
+          super.applyAll(operands)
+        }
+      }
+      val provider = composite(new Counter, increment(1), batchFilter)
+      provider.getBatch(3) shouldBe Arrays.asList(20, 30, 40)
+      provider.getAll(Arrays.asList("a", "b", "a")).asScala shouldBe Map("a" -> 50, "b" -> 60)
+      batches.get shouldBe 2
+    }
+
+    "provide a batch of products from an unmodifiable batch result" in {
+      val batchFilter = new BatchUnaryOperator[Integer] {
+
+        override def apply(i: Integer): Integer = i * 10
+
+        override def applyAll(operands: JList[Integer]): JList[Integer] =
+          Collections.unmodifiableList(super.applyAll(operands))
+      }
+      val batch = composite(new Counter, batchFilter, increment(1)).getBatch(3)
+      batch shouldBe Arrays.asList(11, 21, 31)
+      batch.set(0, 0)
+      batch.get(0) shouldBe 0
+    }
+
+    "memoize its product" in {
+      val counter = new Counter
+      val provider = composite(counter, increment(1)).memoized(Duration.ofMinutes(1))
+      provider.get shouldBe 2
+      provider.get shouldBe 2
+      counter.calls shouldBe 1
+      provider.invalidate()
+      provider.get shouldBe 3
+      counter.calls shouldBe 2
+    }
+
+    "refresh its memoized product ahead of expiry" in {
+      val counter = new Counter
+      val ticker = new AtomicLong
+      val provider = composite(counter).memoized(Duration.ofSeconds(2), (_: Runnable).run(), () => ticker.get)
+      provider.get shouldBe 1
+      ticker.addAndGet(Duration.ofMillis(1400).toNanos)
+      provider.get shouldBe 1
+      counter.calls shouldBe 1
+      ticker.addAndGet(Duration.ofMillis(200).toNanos)
+      provider.get shouldBe 1
+      provider.get shouldBe 2
+    }
+
+    "report a failed refresh of its memoized product" in {
+      val calls = new AtomicInteger
+      val failing: Provider = () => if (calls.incrementAndGet > 1) throw new IllegalStateException("#" + calls) else 1
+      val ticker = new AtomicLong
+      val provider = new CompositeProvider[Integer, Provider, Filter](singletonList(failing),
+        Collections.emptyList[Filter]).memoized(Duration.ofSeconds(2), (_: Runnable).run(), () => ticker.get)
+      provider.get shouldBe 1
+      provider.failure shouldBe Optional.empty
+      ticker.addAndGet(Duration.ofMillis(1600).toNanos)
+      provider.get shouldBe 1
+      provider.failure.get.getMessage shouldBe "#2"
+      ticker.addAndGet(Duration.ofMillis(400).toNanos)
+      val e = intercept[IllegalStateException](provider.get)
+      e.getMessage shouldBe "#3"
+      e.getSuppressed.map(_.getMessage) shouldBe Array("#2")
+
+      calls.set(0)
+      val tasks = new ArrayDeque[Runnable]
+      val invalidated = new CompositeProvider[Integer, Provider, Filter](singletonList(failing),
+        Collections.emptyList[Filter]).memoized(Duration.ofSeconds(2), (r: Runnable) => { tasks.add(r); () }, () => ticker.get)
+      invalidated.get shouldBe 1
+      ticker.addAndGet(Duration.ofMillis(1600).toNanos)
+      invalidated.get shouldBe 1
+      invalidated.invalidate()
+      tasks.poll.run()
+      invalidated.failure shouldBe Optional.empty
+    }
+
+    "select its providers" in {
+      val providers = Arrays.asList[Provider](() => 1, () => 2, () => 3)
+      val roundRobin = new CompositeProvider[Integer, Provider, Filter](providers, Collections.emptyList[Filter])
+        .select(ProviderSelector.roundRobin)
+      Seq.fill(6)(roundRobin.get.intValue).sorted shouldBe Seq(1, 1, 2, 2, 3, 3)
+      Seq.fill(6) {
+        val product = new AtomicInteger
+        val thread = new Thread(() => product.set(roundRobin.get))
+        thread.start()
+        thread.join()
+        product.get
+      }.sorted shouldBe Seq(1, 1, 2, 2, 3, 3)
+
+      val weighted = new ServiceLocator().provider[String, Subject](classOf[Subject]).select(ProviderSelector.weighted)
+      val counts = Seq.fill(1200)(weighted.get).groupBy(identity).map { case (k, v) => k -> v.size }
+      counts("Christian") should be > 5 * counts("World")
+
+      val slow: Provider = () => { Thread.sleep(2); 1 }
+      val fast: Provider = () => 2
+      val leastLatency = new CompositeProvider[Integer, Provider, Filter](Arrays.asList(slow, fast),
+        Collections.emptyList[Filter], ProviderSelector.leastLatency)
+      val products = Seq.fill(2000)(leastLatency.get.intValue)
+      products.takeRight(500).count(_ == 2) should be > 450
+    }
+
+    "hedge the calls to a slow provider" in {
+      val slow: Provider = () => { Thread.sleep(1000); 1 }
+      val fast: Provider = () => 2
+      val composite = new CompositeProvider[Integer, Provider, Filter](Arrays.asList(slow, fast),
+        Arrays.asList(increment(10)))
+      val hedged = composite.hedged(Duration.ofMillis(10), 1)
+      hedged.get shouldBe 12
+      hedged.hedges shouldBe 1
+      val unhedged = composite.hedged(Duration.ofMillis(10), 0)
+      unhedged.get shouldBe 11
+      unhedged.hedges shouldBe 0
+      composite.hedged(95, 0.1).delay shouldBe Optional.empty
+
+      val failing: Provider = () => throw new IllegalStateException
+      val learning = new CompositeProvider[Integer, Provider, Filter](Arrays.asList(failing, fast),
+        Collections.emptyList[Filter]).hedged(95, 0.1)
+      for (_ <- 1 to 1000) {
+        an[IllegalStateException] should be thrownBy learning.get
+      }
+      learning.delay shouldBe Optional.empty
+
+      val calls = new AtomicInteger
+      val tailing: Provider = () => {
+        calls.incrementAndGet % 25 match {
+          case 0 | 1 => Thread.sleep(200)
+          case 2 => Thread.sleep(5)
+          case _ =>
+        }
+        1
+      }
+      val stable = new CompositeProvider[Integer, Provider, Filter](Arrays.asList(tailing, fast),
+        Collections.emptyList[Filter]).hedged(90, 1)
+      for (_ <- 1 to 1000) {
+        stable.get
+      }
+      stable.hedges should be > 0L
+      stable.delay.get should be >= Duration.ofMillis(4)
+    }
+
+    "aggregate the products of all providers" in {
+      val locator = new ServiceLocator
+      val subjects = locator.provider[String, Subject](classOf[Subject])
+      subjects.fanOut(locator.reducer[String, Conjunction](classOf[Conjunction]), Duration.ofSeconds(10))
+        .get shouldBe "Christian and World"
+
+      val stalled: Provider = () => { Thread.sleep(10000); 1 }
+      val aggregate = new CompositeProvider[Integer, Provider, Filter](Arrays.asList(() => 2, stalled, () => 3),
+        Arrays.asList(increment(10))).fanOut((a: Integer, b: Integer) => a * b, Duration.ofMillis(100))
+      aggregate.get shouldBe 16
+      aggregate.timeouts shouldBe 1
+    }
+
+    "confine its products to threads" in {
+      val cleaned = new ConcurrentLinkedQueue[Integer]
+      val provider = composite(new Counter, increment(1)).perThread(cleaned.add(_))
+      provider.apply[Integer](identity(_)) shouldBe 2
+      provider.apply[Integer](identity(_)) shouldBe 2
+      val other = new AtomicReference[Integer]
+      val thread = new Thread(() => other.set(provider.apply[Integer](identity(_))))
+      thread.start()
+      thread.join()
+      other.get shouldBe 3
+      provider.remove()
+      cleaned.asScala.toList shouldBe List(2)
+      provider.apply[Integer](identity(_)) shouldBe 4
+      provider.close()
+      cleaned.asScala.toSet shouldBe Set(2, 3, 4)
+      an[IllegalStateException] should be thrownBy provider.accept(_ => ())
+    }
+
+    "pool its products on virtual threads" in {
+      val ofVirtual = Try(classOf[Thread].getMethod("ofVirtual"))
+      assume(ofVirtual.isSuccess, "Virtual threads require JDK 21 or later.")
+      val builder = ofVirtual.get.invoke(null)
+      val unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", classOf[Runnable])
+      val cleaned = new ConcurrentLinkedQueue[Integer]
+      val products = new ConcurrentLinkedQueue[Integer]
+      val provider = composite(new Counter, increment(1)).perThread(cleaned.add(_))
+      for (_ <- 1 to 3) {
+        val task: Runnable = () => products.add(provider.apply[Integer](identity(_)))
+        val thread = unstarted.invoke(builder, task).asInstanceOf[Thread]
+        thread.start()
+        thread.join()
+      }
+      products.asScala.toList shouldBe List(2, 2, 2)
+      cleaned shouldBe empty
+      provider.close()
+      cleaned.asScala.toList shouldBe List(2)
+    }
+
+    "pool its products" in {
+      val cleaned = new ConcurrentLinkedQueue[Integer]
+      val pool = composite(new Counter)
+        .pooled(1, (i: Integer) => if (i % 2 == 0) null else i, Duration.ofMinutes(1), cleaned.add(_))
+      val first = pool.borrow()
+      val second = pool.borrow()
+      first.get shouldBe 1
+      second.get shouldBe 2
+      second.close()
+      first.close()
+      first.close()
+      cleaned.asScala.toList shouldBe List(2)
+      val third = pool.borrow()
+      third should not be theSameInstanceAs(first)
+      third.get shouldBe 1
+      third.close()
+      pool.hits shouldBe 1
+      pool.misses shouldBe 2
+      pool.hitRate shouldBe 1.0 / 3
+      pool.evictIdle() shouldBe 0
+      pool.close()
+      cleaned.asScala.toList shouldBe List(2, 1)
+    }
+
+    "ignore closing a lease again after its product has been borrowed again" in {
+      val pool = composite(new Counter).pooled(1)
+      val first = pool.borrow()
+      first.get shouldBe 1
+      first.close()
+      val second = pool.borrow()
+      second.get shouldBe 1
+      first.close()
+      val third = pool.borrow()
+      third.get shouldBe 2
+      second.close()
+      third.close()
+      pool.borrow().get shouldBe 1
+      pool.hits shouldBe 2
+      pool.misses shouldBe 2
+    }
+  }
+
+  "A primitive composite provider" should {
+    "apply more than three filters in order without boxing" in {
+      val provider = new IntCompositeProvider[IntSupplier, IntUnaryOperator](singletonList[IntSupplier](() => 1000),
+        Arrays.asList((1 to 5).map[IntUnaryOperator](i => v => v * 2 + i): _*))
+      provider.getAsInt shouldBe 32057
+      new LongCompositeProvider[LongSupplier, LongUnaryOperator](singletonList[LongSupplier](() => 1000),
+        Arrays.asList((1 to 5).map[LongUnaryOperator](i => v => v * 2 + i): _*)).getAsLong shouldBe 32057
+      new DoubleCompositeProvider[DoubleSupplier, DoubleUnaryOperator](singletonList[DoubleSupplier](() => 1000),
+        Arrays.asList((1 to 5).map[DoubleUnaryOperator](i => v => v * 2 + i): _*)).getAsDouble shouldBe 32057
+
+      val threads = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+      val thread = Thread.currentThread.getId
+      def allocated(calls: Int): Long = {
+        val start = threads.getThreadAllocatedBytes(thread)
+        var i = 0
+        while (i < calls) {
+          provider.getAsInt
+          i += 1
+        }
+        threads.getThreadAllocatedBytes(thread) - start
+      }
+      allocated(100000)
+      allocated(100000) should be < 100000L
+    }
+  }
+}
+
+object CompositeProviderSpec {
+
+  type Provider = Supplier[Integer]
+  type Filter = UnaryOperator[Integer]
+
+  def composite(provider: Provider, filters: Filter*): CompositeProvider[Integer, Provider, Filter] =
+    new CompositeProvider[Integer, Provider, Filter](singletonList(provider), Arrays.asList(filters: _*))
+
+  def increment(by: Int): Filter = (i: Integer) => i + by
+
+  final class Counter extends Provider {
+
+    private val counter = new AtomicInteger
+
+    def calls: Int = counter.get
+
+    override def get: Integer = counter.incrementAndGet
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.it
+
+import global.namespace.service.wight.it.NativeImageConfigSpec._
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+
+import java.nio.file.{Files, Path, Paths}
+import scala.io.Source
+import scala.jdk.CollectionConverters._
+
+/** @author Christian Schlichtherle */
+class NativeImageConfigSpec extends AnyWordSpec {
+
+  "The generated native image configuration" should {
+    val reflectConfig = read(Config + "reflect-config.json")
+    val resourceConfig = read(Config + "resource-config.json")
+    val classes = Paths.get(getClass.getClassLoader.getResource(Config + "reflect-config.json").toURI)
+      .getParent.getParent.getParent.getParent.getParent
+    val services = Files.list(classes.resolve("META-INF/services")).iterator.asScala.toList
+
+    "include all service provider configuration files and index files" in {
+      val patterns = "\"pattern\": \"\\\\\\\\Q(.+?)\\\\\\\\E\"".r.findAllMatchIn(resourceConfig).map(_.group(1)).toSet
+      services should not be empty
+      services.foreach { file =>
+        patterns should contain allOf("META-INF/services/" + file.getFileName, indexOf(file))
+      }
+    }
+
+    "include all service implementation classes and their factory classes" in {
+      val names = "\"name\": \"(.+?)\"".r.findAllMatchIn(reflectConfig).map(_.group(1)).toSet
+      services.flatMap(lines).foreach(names should contain(_))
+      services.flatMap(file => lines(classes.resolve(indexOf(file))).map(_.split("\\s+"))).foreach { entry =>
+        entry should have length 3
+        names should contain(entry(2))
+      }
+    }
+  }
+}
+
+private object NativeImageConfigSpec {
+
+  val Config = "META-INF/native-image/global.namespace.service-wight/service-wight-sample/"
+
+  def indexOf(file: Path): String = "META-INF/service-wight/" + file.getFileName + ".idx"
+
+  def read(resource: String): String = {
+    val source = Source.fromResource(resource)
+    try source.mkString finally source.close()
+  }
+
+  def lines(file: Path): List[String] = Files.readAllLines(file).asScala.toList.filter(_.nonEmpty)
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.it
+
+import global.namespace.service.wight.core.ServiceLocator
+import global.namespace.service.wight.it.PluginLocatorSpec._
+import global.namespace.service.wight.it.ServiceLocatorSpec.Expected
+import global.namespace.service.wight.it.case2.{Salutation, Subject}
+import org.scalatest.concurrent.Eventually._
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.time.{Seconds, Span}
+import org.scalatest.wordspec.AnyWordSpec
+
+import java.io.File
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.{Files, Path}
+import java.util.ServiceConfigurationError
+import java.util.jar.{JarEntry, JarOutputStream}
+import javax.tools.ToolProvider
+import scala.jdk.CollectionConverters._
+
+/** @author Christian Schlichtherle */
+class PluginLocatorSpec extends AnyWordSpec {
+
+  "A plugin locator" should {
+    "relocate the live providers when a plugin JAR file gets added or removed" in {
+      withTempDir { root =>
+        val jar = pluginJar(root)
+        val dir = Files.createDirectories(root.resolve("plugins"))
+        val plugins = new ServiceLocator().plugins(dir)
+        try {
+          val live = plugins.provider[String, Subject, Salutation](classOf[Subject], classOf[Salutation])
+          val unaffected = plugins.provider[String, Subject](classOf[Subject])
+          val before = unaffected.current
+          live.get shouldBe Expected
+
+          Files.copy(jar, dir.resolve("shout.jar"))
+          plugins.refresh()
+          live.get shouldBe Expected.toUpperCase
+          unaffected.current should be theSameInstanceAs before
+
+          Files.delete(dir.resolve("shout.jar"))
+          plugins.refresh()
+          live.get shouldBe Expected
+        } finally {
+          plugins.close()
+        }
+      }
+    }
+
+    "ignore a truncated JAR file until it can be read" in {
+      withTempDir { root =>
+        val jar = pluginJar(root)
+        val dir = Files.createDirectories(root.resolve("plugins"))
+        val shout = dir.resolve("shout.jar")
+        Files.write(shout, Files.readAllBytes(jar).take(100))
+        val plugins = new ServiceLocator().plugins(dir)
+        try {
+          val live = plugins.provider[String, Subject, Salutation](classOf[Subject], classOf[Salutation])
+          live.get shouldBe Expected
+
+          Files.copy(jar, shout, REPLACE_EXISTING)
+          plugins.refresh()
+          live.get shouldBe Expected.toUpperCase
+        } finally {
+          plugins.close()
+        }
+      }
+    }
+
+    "keep a replaced plugin JAR file open while relocating its live providers fails" in {
+      withTempDir { root =>
+        val jar = pluginJar(root)
+        val dir = Files.createDirectories(root.resolve("plugins"))
+        val shout = dir.resolve("shout.jar")
+        Files.copy(jar, shout)
+        val plugins = new ServiceLocator().plugins(dir)
+        try {
+          val live = plugins.provider[String, Subject, Salutation](classOf[Subject], classOf[Salutation])
+          live.get shouldBe Expected.toUpperCase
+          val loader = live.current.filters.asScala.map(_.getClass).find(_.getName == "p.Shout").get.getClassLoader
+
+          brokenJar(shout)
+          a[ServiceConfigurationError] should be thrownBy plugins.refresh()
+          live.get shouldBe Expected.toUpperCase
+          loader.getResource("p/Shout.class") should not be null
+
+          Files.copy(jar, shout, REPLACE_EXISTING)
+          plugins.refresh()
+          live.get shouldBe Expected.toUpperCase
+          loader.getResource("p/Shout.class") shouldBe null
+        } finally {
+          plugins.close()
+        }
+      }
+    }
+
+    "watch the plugin directories" in {
+      withTempDir { root =>
+        val jar = pluginJar(root)
+        val dir = Files.createDirectories(root.resolve("plugins"))
+        val plugins = new ServiceLocator().plugins(dir)
+        try {
+          val live = plugins.provider[String, Subject, Salutation](classOf[Subject], classOf[Salutation])
+          Files.copy(jar, dir.resolve("shout.jar"))
+          eventually(timeout(Span(30, Seconds))) {
+            live.get shouldBe Expected.toUpperCase
+          }
+        } finally {
+          plugins.close()
+        }
+      }
+    }
+  }
+}
+
+private object PluginLocatorSpec {
+
+  def withTempDir(test: Path => Any): Unit = {
+    val root = Files.createTempDirectory("service-wight-plugins-test")
+    try {
+      test(root)
+    } finally {
+      Files.walk(root).iterator.asScala.toList.reverse.foreach(Files.delete)
+    }
+  }
+
+  /** Compiles a service filter which converts the product to upper case and returns the path of its JAR file. */
+  def pluginJar(root: Path): Path = {
+    val src = Files.createDirectories(root.resolve("src/p"))
+    val out = Files.createDirectories(root.resolve("out"))
+    val source = src.resolve("Shout.java")
+    Files.write(source, (
+      "package p;\n" +
+        "@global.namespace.service.wight.annotation.ServiceImplementation(priority = 100)\n" +
+        "public class Shout implements " + classOf[Salutation].getName + " {\n" +
+        "    public String apply(String text) { return text.toUpperCase(java.util.Locale.ENGLISH); }\n" +
+        "}\n").getBytes(UTF_8))
+    val args = Seq("-d", out.toString, "-classpath", System.getProperty("java.class.path"), source.toString)
+    ToolProvider.getSystemJavaCompiler.run(null, null, null, args: _*) shouldBe 0
+    val jar = root.resolve("shout.jar")
+    val jos = new JarOutputStream(Files.newOutputStream(jar))
+    try {
+      Files.walk(out).iterator.asScala.filter(Files.isRegularFile(_)).foreach { file =>
+        jos.putNextEntry(new JarEntry(out.relativize(file).toString.replace(File.separatorChar, '/')))
+        Files.copy(file, jos)
+        jos.closeEntry()
+      }
+    } finally {
+      jos.close()
+    }
+    jar
+  }
+
+  /** Writes a JAR file which declares a service filter class which doesn't exist. */
+  def brokenJar(jar: Path): Unit = {
+    val jos = new JarOutputStream(Files.newOutputStream(jar))
+    try {
+      jos.putNextEntry(new JarEntry("META-INF/services/" + classOf[Salutation].getName))
+      jos.write("p.Missing\n".getBytes(UTF_8))
+      jos.closeEntry()
+    } finally {
+      jos.close()
+    }
+  }
+}
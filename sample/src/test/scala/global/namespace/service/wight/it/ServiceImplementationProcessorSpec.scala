@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.it
+
+import global.namespace.service.wight.it.ServiceImplementationProcessorSpec._
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+
+import java.io.File
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path}
+import javax.tools.ToolProvider
+import scala.jdk.CollectionConverters._
+
+/** @author Christian Schlichtherle */
+class ServiceImplementationProcessorSpec extends AnyWordSpec {
+
+  "The service implementation processor" should {
+    "merge its registrations with the existing ones in an incremental build" in {
+      withProject { project =>
+        import project._
+
+        def registered: List[String] = lines("META-INF/services/p.Subject")
+
+        val subject = source("Subject", SubjectSource)
+        val world = source("World", WorldSource)
+        val christian = source("Christian",
+          "@global.namespace.service.wight.annotation.ServiceImplementation(priority = 10)\n" +
+            "public class Christian implements Subject { public String get() { return \"Christian\"; } }\n")
+
+        compile(subject, world, christian)
+        registered shouldBe List("p.Christian", "p.World")
+
+        compile(christian)
+        registered shouldBe List("p.Christian", "p.World")
+
+        Files.delete(out.resolve("p/World.class"))
+        compile(christian)
+        registered shouldBe List("p.Christian")
+      }
+    }
+
+    "retain the native image configuration of other service interfaces in an incremental build" in {
+      withProject { project =>
+        import project._
+
+        def config(name: String): String = lines(NativeImage + name).mkString("\n")
+
+        val subject = source("Subject", SubjectSource)
+        val world = source("World", WorldSource)
+        val salutation = source("Salutation",
+          "@global.namespace.service.wight.annotation.ServiceInterface\n" +
+            "public interface Salutation extends java.util.function.UnaryOperator<String> { }\n")
+        val hello = source("Hello",
+          "@global.namespace.service.wight.annotation.ServiceImplementation\n" +
+            "public class Hello implements Salutation { public String apply(String s) { return \"Hello \" + s; } }\n")
+
+        compile(subject, world, salutation, hello)
+        compile(world)
+
+        val resources = config("resource-config.json")
+        Seq("services/p.Subject", "services/p.Salutation", "service-wight/p.Subject.idx",
+          "service-wight/p.Salutation.idx").foreach(resources should include(_))
+        val reflected = config("reflect-config.json")
+        Seq("\"p.World\"", "\"p.Hello\"").foreach(reflected should include(_))
+        lines("META-INF/services/p.Salutation") shouldBe List("p.Hello")
+      }
+    }
+  }
+}
+
+private object ServiceImplementationProcessorSpec {
+
+  val NativeImage = "META-INF/native-image/global.namespace.service-wight/services/"
+
+  val SubjectSource: String =
+    "@global.namespace.service.wight.annotation.ServiceInterface\n" +
+      "public interface Subject extends java.util.function.Supplier<String> { }\n"
+
+  val WorldSource: String =
+    "@global.namespace.service.wight.annotation.ServiceImplementation\n" +
+      "public class World implements Subject { public String get() { return \"World\"; } }\n"
+
+  def withProject(test: Project => Unit): Unit = {
+    val root = Files.createTempDirectory("service-wight-processor")
+    try test(new Project(root)) finally Files.walk(root).iterator.asScala.toList.reverse.foreach(Files.delete)
+  }
+
+  final class Project(root: Path) {
+
+    private val src = Files.createDirectories(root.resolve("src/p"))
+
+    val out: Path = Files.createDirectories(root.resolve("out"))
+
+    def source(name: String, body: String): Path = {
+      val file = src.resolve(name + ".java")
+      Files.write(file, ("package p;\n" + body).getBytes(UTF_8))
+      file
+    }
+
+    def compile(files: Path*): Unit = {
+      val classPath = System.getProperty("java.class.path") + File.pathSeparator + out
+      val args = Seq("-d", out.toString, "-classpath", classPath) ++ files.map(_.toString)
+      ToolProvider.getSystemJavaCompiler.run(null, null, null, args: _*) shouldBe 0
+    }
+
+    def lines(resource: String): List[String] = Files.readAllLines(out.resolve(resource)).asScala.toList
+  }
+}
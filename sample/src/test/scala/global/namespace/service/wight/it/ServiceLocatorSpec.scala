@@ -7,13 +7,22 @@ package global.namespace.service.wight.it
 import global.namespace.service.wight.core.{CompositeProvider, ServiceLocator}
 import global.namespace.service.wight.it.ServiceLocatorSpec._
 import global.namespace.service.wight.it.case1.{UnlocatableServiceFilter, UnlocatableServiceProvider}
-import global.namespace.service.wight.it.case2.{Salutation, Subject}
+import global.namespace.service.wight.it.case2.{Christian, Salutation, Subject}
+import global.namespace.service.wight.it.case3.{PremiumRateLimit, RateLimit, Throttle}
+import global.namespace.service.wight.it.case4.Trace
+import global.namespace.service.wight.it.case5.{Party, Rendezvous}
 import org.scalatest.matchers.should.Matchers._
 import org.scalatest.wordspec.AnyWordSpec
 
+import java.net.URLClassLoader
+import java.nio.file.Files
 import java.util.Collections.reverse
-import java.util.ServiceConfigurationError
+import java.util.{ServiceConfigurationError, List => JList}
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.{Supplier, UnaryOperator}
+import scala.io.Source
+import scala.jdk.CollectionConverters._
 import scala.reflect.{ClassTag, classTag}
 
 /** @author Christian Schlichtherle */
@@ -49,6 +58,179 @@ class ServiceLocatorSpec extends AnyWordSpec {
         updated.get shouldBe ReversedExpected
       }
     }
+
+    "told to create a deferred provider" should {
+      "locate its providers and filters on first use" in {
+        val provider = new ServiceLocator()
+          .lazyProvider[String, Subject, Salutation](classOf[Subject], classOf[Salutation])
+        provider.isLocated shouldBe false
+        provider.get shouldBe Expected
+        provider.isLocated shouldBe true
+        provider.composite should be theSameInstanceAs provider.composite
+      }
+
+      "throw the original service configuration error on first use" in {
+        val provider = new ServiceLocator().lazyProvider[String, UnlocatableServiceProvider](
+          classOf[UnlocatableServiceProvider])
+        intercept[ServiceConfigurationError](provider.get).getMessage should include(
+          classOf[UnlocatableServiceProvider].getName)
+        provider.isLocated shouldBe false
+      }
+    }
+
+    "told to locate many providers at once" should {
+      "return a composite provider for each interface" in {
+        val providers = locator.locator.locateAll(classOf[Subject], classOf[Subject])
+        providers should have size 1
+        providers.get(classOf[Subject]).get shouldBe "Christian"
+      }
+
+      "throw a service configuration error if it can't locate a provider" in {
+        intercept[ServiceConfigurationError] {
+          locator.locator.locateAll(classOf[Subject], classOf[UnlocatableServiceProvider])
+        }
+      }
+
+      "throw an illegal argument exception if an interface is not a supplier" in {
+        intercept[IllegalArgumentException] {
+          locator.locator.locateAll(classOf[Salutation])
+        }
+      }
+    }
+
+    "told to warm up without memoizing" should {
+      "throw an illegal state exception" in {
+        intercept[IllegalStateException] {
+          locator.locator.warmUp(classOf[Subject])
+        }
+      }
+    }
+
+    "cached" should {
+      val cached = new LocatorSugar(new ServiceLocator().cached)
+
+      "reuse the located providers and filters" in {
+        val a = cached.provider[String, Subject, Salutation]
+        val b = cached.provider[String, Subject, Salutation]
+        a.get shouldBe Expected
+        b.get shouldBe Expected
+        a.providers.get(0) should be theSameInstanceAs b.providers.get(0)
+        a.filters.get(0) should be theSameInstanceAs b.filters.get(0)
+      }
+
+      "locate the providers and filters again after invalidation" in {
+        val a = cached.provider[String, Subject, Salutation]
+        cached.locator.invalidate(classOf[Subject])
+        val b = cached.provider[String, Subject, Salutation]
+        a.providers.get(0) should not be theSameInstanceAs(b.providers.get(0))
+        a.filters.get(0) should be theSameInstanceAs b.filters.get(0)
+        cached.locator.invalidateAll()
+        val c = cached.provider[String, Subject, Salutation]
+        b.filters.get(0) should not be theSameInstanceAs(c.filters.get(0))
+      }
+
+      "not memoize failures" in {
+        intercept[ServiceConfigurationError] {
+          cached.provider[String, UnlocatableServiceProvider]
+        }
+        intercept[ServiceConfigurationError] {
+          cached.provider[String, UnlocatableServiceProvider]
+        }
+      }
+
+      "instantiate the providers in parallel when warming up" in {
+        val warm = new LocatorSugar(new ServiceLocator().cached)
+        val before = Party.instances
+        warm.locator.warmUp(classOf[Rendezvous]).join()
+        Party.instances shouldBe before + 2
+        val rendezvous = warm.provider[java.lang.Boolean, Rendezvous]
+        Party.instances shouldBe before + 2
+        all(rendezvous.providers.asScala.map(_.get.booleanValue)) shouldBe true
+      }
+
+      "reuse the warmed up providers and filters" in {
+        val warm = new LocatorSugar(new ServiceLocator().cached)
+        warm.locator.warmUp(classOf[Subject], classOf[Salutation]).join()
+        val a = warm.provider[String, Subject, Salutation]
+        val b = warm.provider[String, Subject, Salutation]
+        a.get shouldBe Expected
+        a.providers.get(0) should be theSameInstanceAs b.providers.get(0)
+        a.filters.get(0) should be theSameInstanceAs b.filters.get(0)
+
+        val tasks = new AtomicInteger
+        warm.locator.warmUp((r: Runnable) => { tasks.incrementAndGet(); r.run() }, classOf[Subject], classOf[Salutation])
+          .join()
+        tasks.get shouldBe 0
+      }
+
+      "complete the warm up exceptionally if it can't locate a provider" in {
+        val e = intercept[CompletionException] {
+          cached.locator.warmUp(classOf[UnlocatableServiceProvider]).join()
+        }
+        e.getCause shouldBe a[ServiceConfigurationError]
+      }
+    }
+
+    "lazy" should {
+      val lazyLocator = new LocatorSugar(new ServiceLocator().`lazy`)
+
+      "only instantiate the provider with the highest priority" in {
+        val provider = lazyLocator.provider[String, Subject, Salutation]
+        provider.toString should include("[providers = [global.namespace.service.wight.it.case2.Christian@")
+        provider.toString should include(", global.namespace.service.wight.it.case2.World]")
+        provider.get shouldBe Expected
+      }
+
+      "instantiate the other providers on demand" in {
+        val provider = lazyLocator.provider[String, Subject, Salutation]
+        val subjects = provider.providers
+        subjects.get(1).get shouldBe "World"
+        provider.providers.get(1) should be theSameInstanceAs subjects.get(1)
+      }
+    }
+
+    "using the generated factories" should {
+      "instantiate the providers without reflection" in {
+        val index = Source.fromResource("META-INF/service-wight/" + classOf[Subject].getName + ".idx")
+        val entries = try index.getLines().map(_.split("\\s+")).toList finally index.close()
+        entries.map(_.head) should contain(classOf[Christian].getName)
+        every(entries.map(_.length)) shouldBe 3
+        val factories = Class.forName(entries.head(2)).getConstructor().newInstance()
+          .asInstanceOf[java.util.function.Function[String, Supplier[_]]]
+        factories(classOf[Christian].getName).get shouldBe a[Christian]
+        factories("NoSuchClass") shouldBe null
+      }
+
+      "be used by the service locator" in {
+        // The constructor reference in the generated factory is a hidden frame, so the locator is the direct caller.
+        val callers = new ServiceLocator().provider[JList[String], Trace](classOf[Trace]).get.asScala
+        callers(1) shouldBe "global.namespace.service.wight.core.Candidate"
+        callers.filter(_.matches("(java\\.lang|sun|jdk\\.internal)\\.reflect\\..*")) shouldBe empty
+      }
+
+      "ignore malformed lines and extra columns" in {
+        val root = Files.createTempDirectory("service-wight-index-test")
+        try {
+          val index = Files.createDirectories(root.resolve("META-INF/service-wight"))
+            .resolve(classOf[Subject].getName + ".idx")
+          val christian = classOf[Christian].getName
+          Files.write(index, List(s"$christian 0 NoSuchFactory extra columns", s"$christian NaN", "?").asJava)
+          val loader = new URLClassLoader(Array(root.toUri.toURL), getClass.getClassLoader)
+          new ServiceLocator(loader).provider[String, Subject](classOf[Subject]).get shouldBe "Christian"
+        } finally {
+          Files.walk(root).iterator.asScala.toList.reverse.foreach(Files.delete)
+        }
+      }
+    }
+
+    "told to create a primitive composite provider" should {
+      "apply the same priority rules without boxing" in {
+        val provider = new ServiceLocator().intProvider(classOf[RateLimit], classOf[Throttle])
+        provider.getAsInt shouldBe 499
+        provider.providers.get(0) shouldBe a[PremiumRateLimit]
+        new ServiceLocator().intProvider(classOf[RateLimit]).getAsInt shouldBe 1000
+      }
+    }
   }
 }
 
@@ -57,9 +239,7 @@ object ServiceLocatorSpec {
   val Expected  = "Hello Christian! How do you do?"
   val ReversedExpected = "Hello World How do you do?!"
 
-  final class LocatorSugar {
-
-    private val locator = new ServiceLocator
+  final class LocatorSugar(val locator: ServiceLocator = new ServiceLocator) {
 
     def provider[S, SP <: Supplier[S] : ClassTag]: CompositeProvider[S, SP, _ <: UnaryOperator[S]] =
       locator.provider[S, SP](runtimeClassOf[SP])
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2005-2015 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package global.namespace.service.wight.it
+
+import global.namespace.service.wight.core._
+import global.namespace.service.wight.it.ServiceLocatorSpec.LocatorSugar
+import global.namespace.service.wight.it.ServiceMetricsSpec._
+import global.namespace.service.wight.it.case2.{Christian, Salutation, Smalltalk, Subject}
+import org.scalatest.Tag
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.util.function.UnaryOperator
+import javax.management.{JMX, ObjectName}
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Runs only in a separate JVM where the system property `global.namespace.service.wight.core.ServiceMetrics` selects
+ * the [[ServiceMetricsSpec.BothServiceMetrics]], so that metrics stay disabled for all other specs.
+ *
+ * @author Christian Schlichtherle
+ */
+class ServiceMetricsSpec extends AnyWordSpec {
+
+  "The JMX service metrics" should {
+    val metrics = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer,
+      new ObjectName("global.namespace.service.wight:type=ServiceMetrics"), classOf[ServiceMetricsMXBean])
+
+    "report the service location and the products" taggedAs Metrics in {
+      val provider = new LocatorSugar().provider[String, Subject, Salutation]
+      metrics.reset()
+      provider.get
+      provider.get
+      metrics.getProductCounts.get(classOf[Christian].getName) shouldBe 2
+      metrics.getFilterCounts.get(classOf[Smalltalk].getName) shouldBe 2
+      metrics.getFilterMedianNanos.get(classOf[Smalltalk].getName).longValue should be > 0L
+      new LocatorSugar().provider[String, Subject, Salutation]
+      metrics.getScanNanos.keySet should contain allOf(classOf[Subject].getName, classOf[Salutation].getName)
+      metrics.getInstantiationNanos.keySet should contain(classOf[Christian].getName)
+    }
+  }
+
+  "The JFR service metrics" should {
+    "emit events when enabled in a recording" taggedAs Metrics in {
+      val file = Files.createTempFile("service-wight", ".jfr")
+      try {
+        val recording = new Recording
+        try {
+          Seq("ServiceLocate", "ServiceInstantiate", "CompositeGet")
+            .foreach(name => recording.enable("global.namespace.service.wight." + name))
+          recording.start()
+          new LocatorSugar().provider[String, Subject, Salutation].get
+          recording.stop()
+          recording.dump(file)
+        } finally {
+          recording.close()
+        }
+        val events = RecordingFile.readAllEvents(file).asScala
+        val names = events.map(_.getEventType.getName).toSet
+        names should contain allOf("global.namespace.service.wight.ServiceLocate",
+          "global.namespace.service.wight.ServiceInstantiate", "global.namespace.service.wight.CompositeGet")
+        val get = events.find(_.getEventType.getName == "global.namespace.service.wight.CompositeGet").get
+        get.getClass("provider").getName shouldBe classOf[Christian].getName
+        get.getString("filters") should endWith(classOf[Smalltalk].getName)
+      } finally {
+        Files.delete(file)
+      }
+    }
+  }
+}
+
+object ServiceMetricsSpec {
+
+  object Metrics extends Tag("global.namespace.service.wight.it.Metrics")
+
+  final class BothServiceMetrics extends ServiceMetrics {
+
+    private val metrics = Seq(new JmxServiceMetrics, new JfrServiceMetrics)
+
+    override def scanned(service: Class[_], candidates: Int, nanos: Long): Unit =
+      metrics.foreach(_.scanned(service, candidates, nanos))
+
+    override def instantiated(service: Class[_], implementation: Class[_], nanos: Long): Unit =
+      metrics.foreach(_.instantiated(service, implementation, nanos))
+
+    override def located(service: Class[_], candidates: Int, chosen: Any, nanos: Long): Unit =
+      metrics.foreach(_.located(service, candidates, chosen, nanos))
+
+    override def filtered(filter: UnaryOperator[_], nanos: Long): Unit =
+      metrics.foreach(_.filtered(filter, nanos))
+
+    override def produced(provider: CompositeProvider[_, _, _], nanos: Long): Unit =
+      metrics.foreach(_.produced(provider, nanos))
+  }
+}